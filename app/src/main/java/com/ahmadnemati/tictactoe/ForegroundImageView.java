@@ -1,101 +0,0 @@
-package com.ahmadnemati.tictactoe;
-
-import android.content.Context;
-import android.content.res.TypedArray;
-import android.graphics.Canvas;
-import android.graphics.drawable.Drawable;
-import android.support.annotation.NonNull;
-import android.support.v4.content.res.ResourcesCompat;
-import android.util.AttributeSet;
-import android.widget.ImageView;
-
-public final class ForegroundImageView extends ImageView {
-    private Drawable foreground;
-
-    public ForegroundImageView(Context context) {
-        this(context, null);
-    }
-
-    public ForegroundImageView(Context context, AttributeSet attrs) {
-        super(context, attrs);
-
-        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ForegroundImageView);
-        Drawable foreground = a.getDrawable(R.styleable.ForegroundImageView_android_foreground);
-        if (foreground != null) {
-            setForeground(foreground);
-        }
-        a.recycle();
-    }
-
-    public void setForegroundResource(int drawableResId) {
-        ResourcesCompat.getDrawable(getContext().getResources(), drawableResId, null);
-    }
-
-    public void setForeground(Drawable drawable) {
-        if (foreground == drawable) {
-            return;
-        }
-        if (foreground != null) {
-            foreground.setCallback(null);
-            unscheduleDrawable(foreground);
-        }
-
-        foreground = drawable;
-
-        if (drawable != null) {
-            drawable.setCallback(this);
-            if (drawable.isStateful()) {
-                drawable.setState(getDrawableState());
-            }
-        }
-        requestLayout();
-        invalidate();
-    }
-
-    @Override
-    protected boolean verifyDrawable(Drawable who) {
-        return super.verifyDrawable(who) || who == foreground;
-    }
-
-    @Override
-    public void jumpDrawablesToCurrentState() {
-        super.jumpDrawablesToCurrentState();
-        if (foreground != null) foreground.jumpToCurrentState();
-    }
-
-    @Override
-    protected void drawableStateChanged() {
-        super.drawableStateChanged();
-        if (foreground != null && foreground.isStateful()) {
-            foreground.setState(getDrawableState());
-        }
-    }
-
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if (foreground != null) {
-            foreground.setBounds(0, 0, getMeasuredWidth(), getMeasuredHeight());
-            invalidate();
-        }
-    }
-
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        if (foreground != null) {
-            foreground.setBounds(0, 0, w, h);
-            invalidate();
-        }
-    }
-
-
-    @Override
-    public void draw(@NonNull Canvas canvas) {
-        super.draw(canvas);
-
-        if (foreground != null) {
-            foreground.draw(canvas);
-        }
-    }
-}
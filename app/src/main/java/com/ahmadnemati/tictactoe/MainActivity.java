@@ -1,9 +1,10 @@
 package com.ahmadnemati.tictactoe;
 
-import android.annotation.SuppressLint;
 import android.app.Dialog;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -11,34 +12,74 @@ import android.support.design.widget.Snackbar;
 import android.support.v4.app.DialogFragment;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
 
 import com.afollestad.materialdialogs.MaterialDialog;
+import com.ahmadnemati.tictactoe.engine.BoardGeometry;
+import com.ahmadnemati.tictactoe.engine.SearchResult;
+import com.ahmadnemati.tictactoe.engine.SolvedTable;
 import com.trello.rxlifecycle.components.support.RxAppCompatActivity;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
 public class MainActivity extends RxAppCompatActivity {
 
-    private static final String EXTRA_GRID_STATE = "gridState";
+    private static final String EXTRA_MOVES = "moves";
+    private static final String EXTRA_PLAYER_ONE_STARTED = "playerOneStarted";
     private static final String EXTRA_IS_GAME_OVER = "isGameOver";
     private static final String EXTRA_CURRENT_PLAYER = "currentPlayer";
     private static final String EXTRA_GAME_STATE = "gameState";
     private static final String EXTRA_WINNING_INDICES = "winningIndices";
+    private static final String EXTRA_GAME_START = "gameStart";
+    private static final String EXTRA_GAME_RECORDED = "gameRecorded";
+    private static final String EXTRA_REPLAYING = "replaying";
     private static final String PREF_HUMAN_WINS = "humanWins";
     private static final String PREF_COMPUTER_WINS = "computer_wins";
     private static final String PREF_TIES = "ties";
+    private static final String PREF_SHOW_SEARCH_STATS = "showSearchStats";
+    private static final String PREF_PRESENTATION_PAUSE = "presentationPause";
+    // Shortest time a CPU move takes to appear when the presentation pause is on.
+    private static final long PRESENTATION_PAUSE_MILLIS = 1000;
+    // Games finished within this long of each other are written to disk together.
+    private static final long STATS_FLUSH_DELAY_MILLIS = 2000;
+
+    // Shared by every instance of the activity, so counts recorded before a rotation are not lost.
+    private static StatsStore stats;
+    private static Subscription statsFlush;
 
     @Bind(R.id.ttt_view)
     protected TicTacToeView ticTacToeView;
 
+    @Bind(R.id.search_stats)
+    protected TextView searchStats;
+
     private final TicTacToeGame game = new TicTacToeGame();
+    private Subscription ponderSubscription;
+    private Subscription cpuMoveSubscription;
+    private Snackbar thinkingSnackbar;
+    private MoveResult lastCpuMove;
+    // SystemClock.elapsedRealtime() when the current game began.
+    private long gameStartMillis;
+    // Whether the current game's result has gone to the stats, so a restored game is not counted twice.
+    private boolean gameRecorded;
+    // Whether the board shows a game replayed from the log rather than one being played.
+    private boolean replaying;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,6 +87,15 @@ public class MainActivity extends RxAppCompatActivity {
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
 
+        if (!TicTacToeGame.hasSolvedTable()) {
+            loadSolvedTable();
+        }
+        openCacheFile();
+        if (stats == null) {
+            stats = new StatsStore(getFilesDir(), BoardGeometry.STANDARD);
+            loadStats();
+        }
+
         ticTacToeView.setOnTileClickedListener(new TicTacToeView.OnTileClickListener() {
             @Override
             public void onTileClick(int position) {
@@ -62,23 +112,141 @@ public class MainActivity extends RxAppCompatActivity {
 
         if (savedInstanceState != null) {
             ticTacToeView.setEnabled(false);
-            game.setGridState(savedInstanceState.getCharArray(EXTRA_GRID_STATE));
+            // Restored move by move rather than from the grid, so the game can still be logged in order.
+            game.setMoves(savedInstanceState.getBoolean(EXTRA_PLAYER_ONE_STARTED),
+                    savedInstanceState.getIntArray(EXTRA_MOVES));
             game.setIsOver(savedInstanceState.getBoolean(EXTRA_IS_GAME_OVER));
             game.setCurrentPlayer(savedInstanceState.getChar(EXTRA_CURRENT_PLAYER));
             game.setGameState(savedInstanceState.getInt(EXTRA_GAME_STATE));
+            gameStartMillis = savedInstanceState.getLong(EXTRA_GAME_START);
+            gameRecorded = savedInstanceState.getBoolean(EXTRA_GAME_RECORDED);
+            replaying = savedInstanceState.getBoolean(EXTRA_REPLAYING);
             ticTacToeView.restoreBoard(game.getGridState());
 
-            if (game.isOver()) {
+            if (replaying) {
+                // A replay only shows how a recorded game ended; it never counts as a new result.
+                ticTacToeView.endGame(winningIndices());
+            } else if (game.isOver()) {
                 game.setWinningIndices(savedInstanceState.getIntArray(EXTRA_WINNING_INDICES));
                 game.endGame();
             } else {
                 ticTacToeView.setNextPlayer(game.currentPlayer());
             }
         } else {
+            gameStartMillis = SystemClock.elapsedRealtime();
             ticTacToeView.setNextPlayer(game.currentPlayer());
         }
     }
 
+    private void loadSolvedTable() {
+        try {
+            AssetFileDescriptor descriptor = getAssets().openFd(SolvedTable.ASSET_NAME);
+            FileChannel channel = descriptor.createInputStream().getChannel();
+            try {
+                TicTacToeGame.setSolvedTable(SolvedTable.wrap(channel.map(
+                        FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength())));
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Without the table every CPU move falls back to minimax.
+        }
+    }
+
+    private void openCacheFile() {
+        Observable.just(getFilesDir())
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<File>() {
+                    @Override
+                    public void call(File directory) {
+                        try {
+                            game.openCacheFile(directory);
+                        } catch (IOException e) {
+                            // Without the file the cache starts empty, as it always used to.
+                        }
+                    }
+                });
+    }
+
+    private void flushCacheFile() {
+        Observable.just(null)
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Object>() {
+                    @Override
+                    public void call(Object o) {
+                        game.flushCacheFile();
+                    }
+                });
+    }
+
+    /**
+     * Reads the stored scores, or on first run takes over the counts the scores dialog used to keep
+     * in the default preferences.
+     */
+    private void loadStats() {
+        Observable.just(PreferenceManager.getDefaultSharedPreferences(this))
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<SharedPreferences>() {
+                    @Override
+                    public void call(SharedPreferences prefs) {
+                        try {
+                            if (!stats.load()) {
+                                stats.addCounts(prefs.getInt(PREF_HUMAN_WINS, 0),
+                                        prefs.getInt(PREF_COMPUTER_WINS, 0), prefs.getInt(PREF_TIES, 0));
+                                stats.flush();
+                                prefs.edit()
+                                        .remove(PREF_HUMAN_WINS)
+                                        .remove(PREF_COMPUTER_WINS)
+                                        .remove(PREF_TIES)
+                                        .apply();
+                            }
+                        } catch (IOException e) {
+                            // The imported counts stay in memory and go out with the next flush.
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Writes the scores after a short delay, together with anything else recorded until then.
+     */
+    private static void scheduleStatsFlush() {
+        if (statsFlush != null && !statsFlush.isUnsubscribed()) {
+            return;
+        }
+        statsFlush = Observable.timer(STATS_FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(new Action1<Long>() {
+                    @Override
+                    public void call(Long tick) {
+                        flushStats();
+                    }
+                });
+    }
+
+    private static void flushStats() {
+        try {
+            stats.flush();
+        } catch (IOException e) {
+            // The changes stay in memory and go out with the next flush.
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        flushCacheFile();
+        if (stats.hasUnflushedChanges()) {
+            Observable.just(null)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(new Action1<Object>() {
+                        @Override
+                        public void call(Object o) {
+                            flushStats();
+                        }
+                    });
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -90,16 +258,23 @@ public class MainActivity extends RxAppCompatActivity {
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putCharArray(EXTRA_GRID_STATE, game.getGridState());
+        outState.putIntArray(EXTRA_MOVES, game.getMoves());
+        outState.putBoolean(EXTRA_PLAYER_ONE_STARTED, game.playerOneStarted());
         outState.putBoolean(EXTRA_IS_GAME_OVER, game.isOver());
         outState.putChar(EXTRA_CURRENT_PLAYER, game.currentPlayer());
         outState.putInt(EXTRA_GAME_STATE, game.getGameState());
         outState.putIntArray(EXTRA_WINNING_INDICES, game.getWinningIndices());
+        outState.putLong(EXTRA_GAME_START, gameStartMillis);
+        outState.putBoolean(EXTRA_GAME_RECORDED, gameRecorded);
+        outState.putBoolean(EXTRA_REPLAYING, replaying);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.search_stats).setChecked(isShowingSearchStats());
+        menu.findItem(R.id.presentation_pause).setChecked(
+                PreferenceManager.getDefaultSharedPreferences(this).getBoolean(PREF_PRESENTATION_PAUSE, false));
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -109,6 +284,22 @@ public class MainActivity extends RxAppCompatActivity {
             case R.id.restart:
                 restart();
                 return true;
+            case R.id.search_stats:
+                item.setChecked(!item.isChecked());
+                PreferenceManager.getDefaultSharedPreferences(this).edit()
+                        .putBoolean(PREF_SHOW_SEARCH_STATS, item.isChecked())
+                        .apply();
+                showSearchStats();
+                return true;
+            case R.id.replay_last_game:
+                replayLastGame();
+                return true;
+            case R.id.presentation_pause:
+                item.setChecked(!item.isChecked());
+                PreferenceManager.getDefaultSharedPreferences(this).edit()
+                        .putBoolean(PREF_PRESENTATION_PAUSE, item.isChecked())
+                        .apply();
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -121,10 +312,12 @@ public class MainActivity extends RxAppCompatActivity {
         } else {
             ticTacToeView.setEnabled(true);
             Snackbar.make(ticTacToeView, "Your turn!", Snackbar.LENGTH_LONG).show();
+            startPondering();
         }
     }
 
     private void handleMove(int position) {
+        stopPondering();
         game.makeMove(position);
         char nextPlayer = game.currentPlayer();
         ticTacToeView.setNextPlayer(nextPlayer);
@@ -132,14 +325,39 @@ public class MainActivity extends RxAppCompatActivity {
         if (!game.isOver()) {
             if (nextPlayer == TicTacToeGame.PLAYER_TWO) {
                 simulateCpuMove();
+            } else {
+                startPondering();
             }
         }
     }
 
+    /**
+     * Searches the replies to every human move while the human is choosing.
+     */
+    private void startPondering() {
+        stopPondering();
+        ponderSubscription = game.ponder()
+                .subscribeOn(Schedulers.computation())
+                .compose(bindToLifecycle())
+                .subscribe();
+    }
+
+    private void stopPondering() {
+        if (ponderSubscription != null) {
+            ponderSubscription.unsubscribe();
+            ponderSubscription = null;
+        }
+    }
+
 
     private void simulateCpuMove() {
+        stopThinking();
         final Snackbar snackbar = Snackbar.make(ticTacToeView, "Thinking...", Snackbar.LENGTH_INDEFINITE);
-        game.getCpuMove()
+        thinkingSnackbar = snackbar;
+        final long pauseMillis = PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(PREF_PRESENTATION_PAUSE, false) ? PRESENTATION_PAUSE_MILLIS : 0;
+        final long start = SystemClock.uptimeMillis();
+        cpuMoveSubscription = game.getCpuMove()
                 .subscribeOn(Schedulers.computation())
                 .doOnSubscribe(new Action0() {
                     @Override
@@ -148,71 +366,179 @@ public class MainActivity extends RxAppCompatActivity {
                         snackbar.show();
                     }
                 })
-                .delay(1, TimeUnit.SECONDS)
+                .delay(new Func1<MoveResult, Observable<Long>>() {
+                    @Override
+                    public Observable<Long> call(MoveResult move) {
+                        // The pause only pads a quick answer up to its length; it never adds to a search.
+                        long remaining = pauseMillis - (SystemClock.uptimeMillis() - start);
+                        return Observable.timer(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                    }
+                })
                 .observeOn(AndroidSchedulers.mainThread())
-                .compose(bindToLifecycle())
-                .subscribe(new Action1<Object>() {
+                .compose(this.<MoveResult>bindToLifecycle())
+                .subscribe(new Action1<MoveResult>() {
                     @Override
-                    public void call(Object o) {
+                    public void call(MoveResult move) {
+                        if (!game.isCurrent(move)) {
+                            return;
+                        }
+                        stopThinking();
+                        lastCpuMove = move;
                         ticTacToeView.setEnabled(true);
-                        ticTacToeView.setTile(game.getNextCpuMove(), TicTacToeGame.PLAYER_TWO);
-                        handleMove(game.getNextCpuMove());
-                        snackbar.dismiss();
+                        ticTacToeView.setTile(move.getMove(), TicTacToeGame.PLAYER_TWO);
+                        handleMove(move.getMove());
+                        showSearchStats();
+                        flushCacheFile();
                     }
                 });
     }
 
+    /**
+     * Cancels the CPU move being searched, if any; its result is never applied.
+     */
+    private void stopThinking() {
+        if (cpuMoveSubscription != null) {
+            cpuMoveSubscription.unsubscribe();
+            cpuMoveSubscription = null;
+        }
+        if (thinkingSnackbar != null) {
+            thinkingSnackbar.dismiss();
+            thinkingSnackbar = null;
+        }
+    }
+
+    private boolean isShowingSearchStats() {
+        return PreferenceManager.getDefaultSharedPreferences(this).getBoolean(PREF_SHOW_SEARCH_STATS, false);
+    }
+
+    private void showSearchStats() {
+        if (!isShowingSearchStats()) {
+            searchStats.setVisibility(View.GONE);
+            return;
+        }
+        searchStats.setVisibility(View.VISIBLE);
+        SearchResult result = lastCpuMove == null ? null : lastCpuMove.getSearch();
+        if (result == null) {
+            searchStats.setText("No search: solved table or opening move");
+            return;
+        }
+        long probes = result.getTableHits() + result.getTableMisses();
+        searchStats.setText(String.format(Locale.US,
+                "%d nodes, %d cutoffs, depth %d/%d, %.1f ms\ncache %d%% hits, %d/%d entries, %d evicted",
+                result.getNodes(), result.getCutoffs(), result.getDepth(), result.getSelectiveDepth(),
+                result.getElapsedNanos() / 1e6,
+                probes == 0 ? 0 : 100 * result.getTableHits() / probes,
+                game.getCacheSize(), game.getCacheCapacity(), game.getCacheEvictions()));
+    }
+
     private void endGame(@TicTacToeGame.GameState int result, @Nullable int[] winningIndices) {
         ticTacToeView.endGame(winningIndices);
+        if (!gameRecorded && result != TicTacToeGame.CONTINUE) {
+            recordGame(result);
+        }
         if (getSupportFragmentManager().findFragmentByTag("scores") == null) {
             showScoresDialog(result);
         }
     }
 
+    /**
+     * Reads the last finished game back from the log and shows how it ended.
+     */
+    private void replayLastGame() {
+        Observable.create(new Observable.OnSubscribe<StatsStore.LoggedGame>() {
+            @Override
+            public void call(Subscriber<? super StatsStore.LoggedGame> subscriber) {
+                try {
+                    stats.flush();
+                    StatsStore.LoggedGame last = stats.lastLoggedGame();
+                    if (last != null) {
+                        subscriber.onNext(last);
+                    }
+                    subscriber.onCompleted();
+                } catch (IOException e) {
+                    subscriber.onError(e);
+                }
+            }
+        })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(this.<StatsStore.LoggedGame>bindToLifecycle())
+                .subscribe(new Action1<StatsStore.LoggedGame>() {
+                    @Override
+                    public void call(StatsStore.LoggedGame last) {
+                        stopPondering();
+                        stopThinking();
+                        game.setMoves(last.humanStarted, last.moves);
+                        replaying = true;
+                        ticTacToeView.reset();
+                        ticTacToeView.restoreBoard(game.getGridState());
+                        ticTacToeView.setEnabled(false);
+                        ticTacToeView.endGame(winningIndices());
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable error) {
+                        Snackbar.make(ticTacToeView, "Could not read the game log", Snackbar.LENGTH_LONG).show();
+                    }
+                });
+    }
+
+    @Nullable
+    private int[] winningIndices() {
+        return game.getWinningIndices()[0] == -1 ? null : game.getWinningIndices();
+    }
+
     private void restart() {
+        stopPondering();
+        stopThinking();
         ticTacToeView.reset();
         game.restart();
+        gameStartMillis = SystemClock.elapsedRealtime();
+        gameRecorded = false;
+        replaying = false;
         startGame();
     }
 
-    @SuppressLint("CommitPrefEdits")
+    private void recordGame(@TicTacToeGame.GameState int result) {
+        // Only counted in memory here; the disk write happens later on the io scheduler.
+        stats.recordGame(new StatsStore.GameRecord(System.currentTimeMillis(),
+                (int) (SystemClock.elapsedRealtime() - gameStartMillis), game.getMoveCount(),
+                game.playerOneStarted(), result), game.getMoves());
+        gameRecorded = true;
+        scheduleStatsFlush();
+    }
+
+    private void clearScores() {
+        stats.clearCounts();
+        scheduleStatsFlush();
+    }
+
     private void showScoresDialog(@TicTacToeGame.GameState final int result) {
         final boolean isDone = result != TicTacToeGame.CONTINUE;
 
-        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-
         String title;
-        String scoreToUpdate = null;
         switch (result) {
             case TicTacToeGame.ONE_WINS:
                 title = "You win!";
-                scoreToUpdate = PREF_HUMAN_WINS;
                 break;
             case TicTacToeGame.TWO_WINS:
                 title = "Computer wins!";
-                scoreToUpdate = PREF_COMPUTER_WINS;
                 break;
             case TicTacToeGame.TIE:
                 title = "It's a tie!";
-                scoreToUpdate = PREF_TIES;
                 break;
             default:
                 title = "History";
         }
 
-        if (scoreToUpdate != null) {
-            prefs.edit().putInt(scoreToUpdate, prefs.getInt(scoreToUpdate, 0) + 1).commit();
-        }
-
-        String scores = prefs.getInt(PREF_HUMAN_WINS, 0) + " - Human"
-                + "\n" + prefs.getInt(PREF_COMPUTER_WINS, 0) + " - Computer"
-                + "\n" + prefs.getInt(PREF_TIES, 0) + " - Ties";
+        String scores = stats.humanWins() + " - Human"
+                + "\n" + stats.computerWins() + " - Computer"
+                + "\n" + stats.ties() + " - Ties";
 
         ScoresDialogFragment dialog = new ScoresDialogFragment();
         dialog.isDone = isDone;
         dialog.title = title;
         dialog.message = scores;
-        dialog.prefs = prefs;
 
         dialog.show(getSupportFragmentManager(), "scores");
     }
@@ -223,7 +549,6 @@ public class MainActivity extends RxAppCompatActivity {
         boolean isDone;
         String message;
         String title;
-        SharedPreferences prefs;
 
         public ScoresDialogFragment() {
             setRetainInstance(true);
@@ -242,11 +567,7 @@ public class MainActivity extends RxAppCompatActivity {
 
                 @Override
                 public void onNegative(MaterialDialog dialog) {
-                    prefs.edit()
-                            .putInt(PREF_HUMAN_WINS, 0)
-                            .putInt(PREF_COMPUTER_WINS, 0)
-                            .putInt(PREF_TIES, 0)
-                            .apply();
+                    ((MainActivity) getActivity()).clearScores();
                 }
             };
 
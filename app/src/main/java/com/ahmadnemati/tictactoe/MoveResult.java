@@ -0,0 +1,37 @@
+package com.ahmadnemati.tictactoe;
+
+import com.ahmadnemati.tictactoe.engine.SearchResult;
+
+/**
+ * A CPU move, tagged with the game generation it was computed for. The search is null when the
+ * move came from the solved table or was a random opening.
+ */
+public final class MoveResult {
+
+    private final int move;
+    private final int generation;
+    private final SearchResult search;
+
+    MoveResult(int move, int generation, SearchResult search) {
+        this.move = move;
+        this.generation = generation;
+        this.search = search;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public SearchResult getSearch() {
+        return search;
+    }
+
+    @Override
+    public String toString() {
+        return "MoveResult{move=" + move + ", generation=" + generation + ", search=" + search + "}";
+    }
+}
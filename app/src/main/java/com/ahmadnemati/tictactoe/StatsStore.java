@@ -0,0 +1,336 @@
+package com.ahmadnemati.tictactoe;
+
+import com.ahmadnemati.tictactoe.engine.BoardGeometry;
+import com.ahmadnemati.tictactoe.engine.GameLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Win, loss and tie counters plus a record of every finished game. Reads and updates happen in
+ * memory and are safe from any thread; {@link #flush()} writes what changed since the last flush
+ * and is meant to run off the main thread, batching any games that finished in between.
+ *
+ * <p>The counters are rewritten to a temporary file that then replaces the old one, so a process
+ * killed mid-write keeps the previous counts. Game records are appended, and each game's moves go
+ * to a {@link GameLog} next to them.
+ */
+final class StatsStore {
+
+    static final String COUNTERS_FILE = "stats.bin";
+    static final String GAMES_FILE = "games.bin";
+    static final String LOG_FILE = "games.log";
+
+    private static final int MAGIC = 0x53544154; // "STAT"
+    private static final int VERSION = 1;
+
+    /**
+     * One finished game. The result is a {@link TicTacToeGame.GameState} other than
+     * {@link TicTacToeGame#CONTINUE}.
+     */
+    static final class GameRecord {
+        // endedAtMillis, durationMillis, moves, flags
+        static final int BYTES = 8 + 4 + 1 + 1;
+
+        final long endedAtMillis;
+        final int durationMillis;
+        final int moves;
+        final boolean humanStarted;
+        @TicTacToeGame.GameState final int result;
+
+        GameRecord(long endedAtMillis, int durationMillis, int moves, boolean humanStarted,
+                   @TicTacToeGame.GameState int result) {
+            this.endedAtMillis = endedAtMillis;
+            this.durationMillis = durationMillis;
+            this.moves = moves;
+            this.humanStarted = humanStarted;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A game read back from the log: who started and the moves in order.
+     */
+    static final class LoggedGame {
+        final boolean humanStarted;
+        final int[] moves;
+
+        LoggedGame(boolean humanStarted, int[] moves) {
+            this.humanStarted = humanStarted;
+            this.moves = moves;
+        }
+    }
+
+    private final File directory;
+    private final BoardGeometry geometry;
+    private int humanWins;
+    private int computerWins;
+    private int ties;
+    private boolean loaded;
+    private boolean countersDirty;
+    // Games not yet appended to the records file and to the log. Kept apart so that a flush failing
+    // between the two retries only the part that did not get written.
+    private final List<GameRecord> pending = new ArrayList<>();
+    private final List<LoggedGame> pendingLog = new ArrayList<>();
+    private final Object flushLock = new Object();
+    // Opened by the first flush that has games to log and kept open from then on. Guarded by flushLock.
+    private GameLog log;
+
+    StatsStore(File directory, BoardGeometry geometry) {
+        this.directory = directory;
+        this.geometry = geometry;
+    }
+
+    /**
+     * Reads the stored counters and adds them to any games recorded in memory meanwhile. Returns
+     * false when there was nothing usable stored, so the caller can import counts kept elsewhere.
+     * A file that cannot be read is moved aside and the counters start from zero, so the next
+     * flush writes a good one in its place.
+     */
+    boolean load() {
+        File file = new File(directory, COUNTERS_FILE);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            markLoaded(0, 0, 0);
+            return false;
+        }
+        try {
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a stats file");
+                }
+                markLoaded(in.readInt(), in.readInt(), in.readInt());
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            file.renameTo(new File(directory, COUNTERS_FILE + ".bad"));
+            markLoaded(0, 0, 0);
+            synchronized (this) {
+                countersDirty = true;
+            }
+            return false;
+        }
+    }
+
+    private synchronized void markLoaded(int storedHumanWins, int storedComputerWins, int storedTies) {
+        if (!loaded) {
+            humanWins += storedHumanWins;
+            computerWins += storedComputerWins;
+            ties += storedTies;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Adds counts kept before this store existed.
+     */
+    synchronized void addCounts(int humanWins, int computerWins, int ties) {
+        this.humanWins += humanWins;
+        this.computerWins += computerWins;
+        this.ties += ties;
+        countersDirty = true;
+    }
+
+    /**
+     * Counts a finished game, whose moves are given in the order they were played.
+     */
+    synchronized void recordGame(GameRecord record, int[] moves) {
+        switch (record.result) {
+            case TicTacToeGame.ONE_WINS:
+                ++humanWins;
+                break;
+            case TicTacToeGame.TWO_WINS:
+                ++computerWins;
+                break;
+            case TicTacToeGame.TIE:
+                ++ties;
+                break;
+            default:
+                throw new IllegalArgumentException("Game is not over: " + record.result);
+        }
+        countersDirty = true;
+        pending.add(record);
+        pendingLog.add(new LoggedGame(record.humanStarted, moves));
+    }
+
+    /**
+     * Zeroes the counters. Game records are kept.
+     */
+    synchronized void clearCounts() {
+        humanWins = 0;
+        computerWins = 0;
+        ties = 0;
+        // Whatever is stored no longer counts.
+        loaded = true;
+        countersDirty = true;
+    }
+
+    synchronized int humanWins() {
+        return humanWins;
+    }
+
+    synchronized int computerWins() {
+        return computerWins;
+    }
+
+    synchronized int ties() {
+        return ties;
+    }
+
+    synchronized boolean hasUnflushedChanges() {
+        return countersDirty || !pending.isEmpty() || !pendingLog.isEmpty();
+    }
+
+    /**
+     * Writes the counters and appends the games recorded since the last flush. The counters are
+     * held back until {@link #load()} has run, so stored counts are never overwritten by partial
+     * ones; games are appended either way. Flushes from different threads take turns, and none of
+     * them holds up the in-memory updates.
+     */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            int[] counters;
+            List<GameRecord> records;
+            List<LoggedGame> games;
+            synchronized (this) {
+                boolean writeCounters = loaded && countersDirty;
+                if (!writeCounters && pending.isEmpty() && pendingLog.isEmpty()) {
+                    return;
+                }
+                counters = writeCounters ? new int[] {humanWins, computerWins, ties} : null;
+                records = new ArrayList<>(pending);
+                games = new ArrayList<>(pendingLog);
+                pending.clear();
+                pendingLog.clear();
+                if (writeCounters) {
+                    countersDirty = false;
+                }
+            }
+            try {
+                // Each step drops what it wrote, so a later failure does not write it twice.
+                if (!records.isEmpty()) {
+                    appendGames(records);
+                    records.clear();
+                }
+                if (!games.isEmpty()) {
+                    logMoves(games);
+                    games.clear();
+                }
+                if (counters != null) {
+                    writeCounters(counters);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    pending.addAll(0, records);
+                    pendingLog.addAll(0, games);
+                    countersDirty |= counters != null;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void logMoves(List<LoggedGame> games) throws IOException {
+        if (log == null) {
+            log = GameLog.open(new File(directory, LOG_FILE), geometry);
+        }
+        for (LoggedGame game : games) {
+            log.append(!game.humanStarted, game.moves, game.moves.length);
+        }
+        log.flush();
+    }
+
+    /**
+     * The most recent game in the log, or null when there is none.
+     */
+    LoggedGame lastLoggedGame() throws IOException {
+        final LoggedGame[] last = new LoggedGame[1];
+        GameLog.scan(new File(directory, LOG_FILE), geometry, new GameLog.Visitor() {
+            @Override
+            public void visit(boolean playerTwoStarted, int[] moves, int count) {
+                last[0] = new LoggedGame(!playerTwoStarted, Arrays.copyOf(moves, count));
+            }
+        });
+        return last[0];
+    }
+
+    private void appendGames(List<GameRecord> records) throws IOException {
+        FileOutputStream stream = new FileOutputStream(new File(directory, GAMES_FILE), true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            // Drops a record cut short by a killed process, which would misalign everything after it.
+            long length = stream.getChannel().size();
+            stream.getChannel().truncate(length - length % GameRecord.BYTES);
+            for (GameRecord record : records) {
+                out.writeLong(record.endedAtMillis);
+                out.writeInt(record.durationMillis);
+                out.writeByte(record.moves);
+                out.writeByte(record.result << 1 | (record.humanStarted ? 1 : 0));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCounters(int[] counters) throws IOException {
+        File file = new File(directory, COUNTERS_FILE);
+        File temporary = new File(directory, COUNTERS_FILE + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int counter : counters) {
+                out.writeInt(counter);
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Reads every flushed game record, oldest first.
+     */
+    List<GameRecord> readGames() throws IOException {
+        List<GameRecord> records = new ArrayList<>();
+        File file = new File(directory, GAMES_FILE);
+        if (!file.exists()) {
+            return records;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            for (long remaining = file.length(); remaining >= GameRecord.BYTES; remaining -= GameRecord.BYTES) {
+                long endedAtMillis = in.readLong();
+                int durationMillis = in.readInt();
+                int moves = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                records.add(new GameRecord(endedAtMillis, durationMillis, moves, (flags & 1) != 0, flags >> 1));
+            }
+        } catch (EOFException e) {
+            // The file shrank while being read.
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+}
@@ -1,15 +1,33 @@
 package com.ahmadnemati.tictactoe;
 
 import android.support.annotation.IntDef;
-import android.support.v4.util.ArrayMap;
 
-import java.util.ArrayList;
+import com.ahmadnemati.tictactoe.engine.Board;
+import com.ahmadnemati.tictactoe.engine.BoardGeometry;
+import com.ahmadnemati.tictactoe.engine.MinimaxEngine;
+import com.ahmadnemati.tictactoe.engine.MonteCarloEngine;
+import com.ahmadnemati.tictactoe.engine.Position;
+import com.ahmadnemati.tictactoe.engine.SearchEngine;
+import com.ahmadnemati.tictactoe.engine.SearchLimits;
+import com.ahmadnemati.tictactoe.engine.SearchResult;
+import com.ahmadnemati.tictactoe.engine.SolvedTable;
+import com.ahmadnemati.tictactoe.engine.TableFile;
+import com.ahmadnemati.tictactoe.engine.TranspositionTable;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import rx.Observable;
-import rx.functions.Action1;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
 
 public final class TicTacToeGame {
 
@@ -17,61 +35,87 @@ public final class TicTacToeGame {
         void onGameOver(@GameState int state, int[] winningIndices);
     }
 
-    public static final int CONTINUE = 0;
-    public static final int TIE = 1;
-    public static final int ONE_WINS = 2;
-    public static final int TWO_WINS = 3;
+    public static final int CONTINUE = Board.CONTINUE;
+    public static final int TIE = Board.TIE;
+    public static final int ONE_WINS = Board.ONE_WINS;
+    public static final int TWO_WINS = Board.TWO_WINS;
     @IntDef({CONTINUE, TIE, ONE_WINS, TWO_WINS})
     public @interface GameState {
     }
 
 
+    public static final int ENGINE_MINIMAX = 0;
+    public static final int ENGINE_MONTE_CARLO = 1;
+    @IntDef({ENGINE_MINIMAX, ENGINE_MONTE_CARLO})
+    public @interface EngineType {
+    }
+
+
     public static final char NONE = '-';
     public static final char PLAYER_ONE = 'X';
     public static final char PLAYER_TWO = 'O';
 
-    private static final int GRID_SIZE = 9;
+    public static final long DEFAULT_MOVE_TIME_MILLIS = 50;
+    /** Heap for the search cache of a game on a board other than the standard one. */
+    public static final long DEFAULT_CACHE_BYTES = 4L << 20;
 
-    private char[] grid = {NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE};
-    private int[] winningIndices = {-1, -1, -1};
+    private final BoardGeometry geometry;
+    private final Board board;
+    private int[] winningIndices;
     private char currentPlayer;
     private boolean isOver = false;
-    private int nextCpuMove;
+    // Bumped whenever the board is replaced, so that moves computed for an earlier game are dropped.
+    private volatile int generation;
+    private long moveTimeMillis = DEFAULT_MOVE_TIME_MILLIS;
     @GameState private int gameState = CONTINUE;
     private OnGameOverListener onGameOverListener;
     private final Random random = new Random();
 
 
-    public static final ArrayMap<String, Integer> SCORE_CACHE = new ArrayMap<>();
+    private static final TranspositionTable SCORE_CACHE =
+            TranspositionTable.withMemoryBudget(BoardGeometry.STANDARD, 1 << 20);
+    private static SolvedTable solvedTable;
+    private static TableFile standardCacheFile;
 
+    private final TranspositionTable scoreCache;
+    private volatile TableFile cacheFile;
+    private SearchEngine engine;
+    @EngineType private int engineType = ENGINE_MINIMAX;
+    private ForkJoinPool searchPool;
+    // CPU replies searched ahead of time, keyed by the position after the human's move.
+    private final Map<Position, SearchResult> ponderedReplies = new ConcurrentHashMap<>();
 
-    private static final int[][] COORDINATES_MAPPING = {
-            new int[] {0, 0},
-            new int[] {1, 0},
-            new int[] {2, 0},
-            new int[] {0, 1},
-            new int[] {1, 1},
-            new int[] {2, 1},
-            new int[] {0, 2},
-            new int[] {1, 2},
-            new int[] {2, 2}
-    };
+    public TicTacToeGame() {
+        this(BoardGeometry.STANDARD);
+    }
 
-    private static final int[][] INDEX_MAPPING = {
-            new int[] {0, 1, 2},
-            new int[] {3, 4, 5},
-            new int[] {6, 7, 8}
-    };
+    public TicTacToeGame(int width, int height, int k) {
+        this(width, height, k, DEFAULT_CACHE_BYTES);
+    }
 
-    private static final boolean[] DIAGONALS = {
-            true, false, true,
-            false, true, false,
-            true, false, true
-    };
+    /**
+     * A game whose search cache stays within {@code cacheBytes}. The standard board always shares
+     * one small cache between games.
+     */
+    public TicTacToeGame(int width, int height, int k, long cacheBytes) {
+        this(new BoardGeometry(width, height, k), cacheBytes);
+    }
 
-    public TicTacToeGame() {
+    TicTacToeGame(BoardGeometry geometry) {
+        this(geometry, DEFAULT_CACHE_BYTES);
+    }
+
+    TicTacToeGame(BoardGeometry geometry, long cacheBytes) {
+        this.geometry = geometry;
+        scoreCache = geometry.isStandard()
+                ? SCORE_CACHE
+                : TranspositionTable.withMemoryBudget(geometry, cacheBytes);
+        engine = createEngine();
+        winningIndices = new int[geometry.k];
+        Arrays.fill(winningIndices, -1);
         boolean playerOneGoesFirst = random.nextBoolean();
         currentPlayer = playerOneGoesFirst ? PLAYER_ONE : PLAYER_TWO;
+        board = new Board(geometry, currentPlayer == PLAYER_TWO);
     }
 
     public char currentPlayer() {
@@ -83,111 +127,224 @@ public final class TicTacToeGame {
     }
 
     public void makeMove(int position) {
-        grid[position] = currentPlayer;
+        board.setPlayerTwoToMove(currentPlayer == PLAYER_TWO);
+        board.play(position);
 
         currentPlayer = currentPlayer == PLAYER_ONE ? PLAYER_TWO : PLAYER_ONE;
 
-        if (checkForWinner(position) != CONTINUE) {
+        if (checkForWinner() != CONTINUE) {
             endGame();
         }
     }
 
-    private void makeDummyMove(int position, char player) {
-        grid[position] = player;
-    }
-
     @GameState
-    private int checkForWinner(int newIndex) {
-        boolean winnerFound = true;
-        int[] coordinates = COORDINATES_MAPPING[newIndex];
-        char player = grid[newIndex];
-        int x = coordinates[0];
-        int y = coordinates[1];
-        for (int i = 0; i < 3; ++i) {
-            int index = INDEX_MAPPING[i][x];
-            if (grid[index] != player) {
-                winnerFound = false;
-                break;
+    private int checkForWinner() {
+        long line = board.winningLine();
+        if (line == 0) {
+            Arrays.fill(winningIndices, -1);
+        } else {
+            for (int i = 0, index = 0; index < geometry.cells; ++index) {
+                if ((line & (1L << index)) != 0) {
+                    winningIndices[i++] = index;
+                }
             }
-            winningIndices[i] = index;
         }
 
-        if (!winnerFound) {
-            winnerFound = true;
-            for (int i = 0; i < 3; ++i) {
-                int index = INDEX_MAPPING[y][i];
-                if (grid[index] != player) {
-                    winnerFound = false;
-                    break;
+        gameState = board.state();
+        return gameState;
+    }
+
+    public void endGame() {
+        isOver = true;
+        if (onGameOverListener != null) {
+            onGameOverListener.onGameOver(gameState, winningIndices[0] == -1 ? null : winningIndices);
+        }
+    }
+
+    /**
+     * Computes the CPU's move for the current position on the subscribing thread and emits it once.
+     * Unsubscribing stops the search within about a thousand nodes, and nothing is emitted if the
+     * game has been restarted or replaced in the meantime; callers applying the move on another
+     * thread should still check {@link #isCurrent(MoveResult)}.
+     */
+    public Observable<MoveResult> getCpuMove() {
+        final int generation = this.generation;
+        final Position position = new Position(geometry, board.playerOneMask(), board.playerTwoMask(), true);
+        return Observable.create(new Observable.OnSubscribe<MoveResult>() {
+            @Override
+            public void call(Subscriber<? super MoveResult> subscriber) {
+                MoveResult result = computeCpuMove(position, generation, stopOnUnsubscribe(subscriber));
+                if (result != null && isCurrent(result) && !subscriber.isUnsubscribed()) {
+                    subscriber.onNext(result);
+                    subscriber.onCompleted();
                 }
-                winningIndices[i] = index;
             }
+        });
+    }
+
+    private MoveResult computeCpuMove(Position position, int generation, AtomicBoolean stop) {
+        int bestMoves = solvedTable != null && geometry.isStandard()
+                ? solvedTable.bestMoves((int) position.playerOneMask, (int) position.playerTwoMask, true)
+                : 0;
+        if (bestMoves != 0) {
+            return new MoveResult(pickSquare(bestMoves), generation, null);
+        } else if (position.emptyCells() == geometry.fullMask) {
+            return new MoveResult(random.nextInt(geometry.cells), generation, null);
         }
-        if (!winnerFound && DIAGONALS[newIndex]) {
-            winnerFound = true;
-            boolean checkBoth = newIndex == 4;
-            if (checkBoth || newIndex == 0 || newIndex == 8) {
-
-                for (int i = 0; i < 3; ++i) {
-                    int index = INDEX_MAPPING[i][i];
-                    if (grid[index] != player) {
-                        winnerFound = false;
-                        break;
-                    }
-                    winningIndices[i] = index;
-                }
-            } else {
-                winnerFound = false;
+        SearchResult search = ponderedReplies.remove(position);
+        if (search == null) {
+            search = engine.search(position, searchLimits().stopWhen(stop));
+        }
+        return stop.get() ? null : new MoveResult(search.getMove(), generation, search);
+    }
+
+    public boolean isCurrent(MoveResult result) {
+        return result.getGeneration() == generation;
+    }
+
+    private static AtomicBoolean stopOnUnsubscribe(Subscriber<?> subscriber) {
+        final AtomicBoolean stop = new AtomicBoolean();
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                stop.set(true);
             }
-            if (!winnerFound && (checkBoth || newIndex == 2 || newIndex == 6)) {
-                winnerFound = true;
-                for (int i = 2; i < 7; i += 2) {
-                    if (grid[i] != player) {
-                        winnerFound = false;
-                        break;
+        }));
+        return stop;
+    }
+
+    /**
+     * Searches the CPU's reply to every move the human can make from the current position, so that
+     * {@link #getCpuMove()} can answer at once whichever move comes. Replies are searched one at a
+     * time, and unsubscribing stops the search in progress. Completes without searching when the
+     * solved table already answers every reply.
+     */
+    public Observable<Object> ponder() {
+        ponderedReplies.clear();
+        if ((solvedTable != null && geometry.isStandard()) || board.state() != CONTINUE) {
+            return Observable.empty();
+        }
+        final Position position = new Position(geometry, board.playerOneMask(), board.playerTwoMask(), false);
+        final SearchLimits limits = searchLimits();
+        return Observable.create(new Observable.OnSubscribe<Object>() {
+            @Override
+            public void call(Subscriber<? super Object> subscriber) {
+                AtomicBoolean stop = stopOnUnsubscribe(subscriber);
+                for (long remaining = position.emptyCells(); remaining != 0; remaining &= remaining - 1) {
+                    Position reply = position.play(Long.numberOfTrailingZeros(remaining));
+                    if (!reply.isOver()) {
+                        SearchResult search = engine.search(reply, limits.stopWhen(stop));
+                        if (stop.get()) {
+                            return;
+                        }
+                        ponderedReplies.put(reply, search);
                     }
-                    winningIndices[(i / 2) - 1] = i;
                 }
+                subscriber.onCompleted();
             }
+        });
+    }
+
+    private SearchLimits searchLimits() {
+        return moveTimeMillis > 0
+                ? SearchLimits.time(moveTimeMillis, TimeUnit.MILLISECONDS)
+                : SearchLimits.NONE;
+    }
+
+    private int pickSquare(int squares) {
+        int skip = random.nextInt(Integer.bitCount(squares));
+        for (int i = 0; i < skip; ++i) {
+            squares &= squares - 1;
         }
+        return Integer.numberOfTrailingZeros(squares);
+    }
+
+    /**
+     * Upper bound on the time a CPU move may search, or 0 to always search to the end of the game.
+     */
+    public void setMoveTimeMillis(long moveTimeMillis) {
+        this.moveTimeMillis = moveTimeMillis;
+    }
+
+    /**
+     * Splits CPU move searches across {@code pool}, or searches on the calling thread when null.
+     * ForkJoinPool needs API 21 on Android.
+     */
+    public void setSearchPool(ForkJoinPool pool) {
+        searchPool = pool;
+        engine = createEngine();
+    }
 
+    /**
+     * Picks the search behind CPU moves. Minimax with the search cache is the default; Monte Carlo
+     * tree search plays better within the move time on large boards, where minimax only sees a
+     * few plies ahead. The solved table still answers on the standard board either way.
+     */
+    public void setEngine(@EngineType int engineType) {
+        this.engineType = engineType;
+        engine = createEngine();
+        ponderedReplies.clear();
+    }
+
+    private SearchEngine createEngine() {
+        return engineType == ENGINE_MONTE_CARLO
+                ? new MonteCarloEngine(geometry, MonteCarloEngine.DEFAULT_TREE_NODES, searchPool)
+                : new MinimaxEngine(geometry, scoreCache, searchPool);
+    }
 
-        @GameState int result = TIE;
-        if (!winnerFound) {
-            winningIndices[0] = -1;
-            winningIndices[1] = -1;
-            winningIndices[2] = -1;
-            if (!getAvailableStates().isEmpty()) {
-                result = CONTINUE;
+    /**
+     * Occupied entries in the search cache. Scans the cache, so call it once per move at most.
+     */
+    public int getCacheSize() {
+        return scoreCache.size();
+    }
+
+    public int getCacheCapacity() {
+        return scoreCache.capacity();
+    }
+
+    public long getCacheEvictions() {
+        return scoreCache.evictions();
+    }
+
+    /**
+     * Keeps the search cache in a file in {@code directory} and loads what earlier launches stored
+     * there. Does file I/O, so call it off the main thread. The standard board's cache is shared by
+     * all games, so its file is only opened once per process.
+     */
+    public void openCacheFile(File directory) throws IOException {
+        synchronized (TicTacToeGame.class) {
+            if (cacheFile != null) {
+                return;
+            }
+            if (geometry.isStandard() && standardCacheFile != null) {
+                cacheFile = standardCacheFile;
+                return;
+            }
+            cacheFile = TableFile.open(new File(directory, TableFile.fileName(geometry)), scoreCache);
+            if (geometry.isStandard()) {
+                standardCacheFile = cacheFile;
             }
-        } else {
-            result = player == PLAYER_ONE ? ONE_WINS : TWO_WINS;
         }
-
-        gameState = result;
-        return gameState;
     }
 
-    public void endGame() {
-        isOver = true;
-        if (onGameOverListener != null) {
-            onGameOverListener.onGameOver(gameState, winningIndices[0] == -1 ? null : winningIndices);
+    /**
+     * Writes the cache entries added since the last flush to the cache file, if there is one. Does
+     * file I/O, so call it off the main thread.
+     */
+    public void flushCacheFile() {
+        TableFile file = cacheFile;
+        if (file != null) {
+            file.flush();
         }
     }
 
-    public Observable<Object> getCpuMove() {
-        return Observable.just(null)
-                .doOnNext(new Action1<Object>() {
-                    @Override
-                    public void call(Object o) {
-                        if (getAvailableStates().size() == grid.length) {
+    static void setSolvedTable(SolvedTable table) {
+        solvedTable = table;
+    }
 
-                            nextCpuMove = new Random().nextInt(grid.length);
-                        } else {
-                            minimax(0, PLAYER_TWO, -1);
-                        }
-                    }
-                });
+    static boolean hasSolvedTable() {
+        return solvedTable != null;
     }
 
     public boolean isOver() {
@@ -195,12 +352,12 @@ public final class TicTacToeGame {
     }
 
     public void restart() {
+        ++generation;
+        ponderedReplies.clear();
         isOver = false;
-        for (int i = 0; i < GRID_SIZE; ++i) {
-            grid[i] = NONE;
-        }
-        boolean playerOneGoesFirst = new Random().nextBoolean();
+        boolean playerOneGoesFirst = random.nextBoolean();
         currentPlayer = playerOneGoesFirst ? PLAYER_ONE : PLAYER_TWO;
+        board.clear(currentPlayer == PLAYER_TWO);
     }
 
     @Override
@@ -213,9 +370,10 @@ public final class TicTacToeGame {
     }
 
     private String pprintGrid() {
+        char[] grid = getGridState();
         StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < 9; ++i) {
-            if (i % 3 == 0) {
+        for (int i = 0; i < geometry.cells; ++i) {
+            if (i % geometry.width == 0) {
                 builder.append(" | ");
             }
             builder.append(grid[i]);
@@ -224,11 +382,65 @@ public final class TicTacToeGame {
     }
 
     public char[] getGridState() {
-        return this.grid;
+        char[] grid = new char[geometry.cells];
+        for (int i = 0; i < geometry.cells; ++i) {
+            long bit = 1L << i;
+            if ((board.playerOneMask() & bit) != 0) {
+                grid[i] = PLAYER_ONE;
+            } else if ((board.playerTwoMask() & bit) != 0) {
+                grid[i] = PLAYER_TWO;
+            } else {
+                grid[i] = NONE;
+            }
+        }
+        return grid;
     }
 
     public void setGridState(char[] gridState) {
-        this.grid = gridState;
+        ++generation;
+        ponderedReplies.clear();
+        board.clear(currentPlayer == PLAYER_TWO);
+        for (int i = 0; i < geometry.cells; ++i) {
+            if (gridState[i] != NONE) {
+                board.place(i, gridState[i] == PLAYER_TWO);
+            }
+        }
+    }
+
+    public int getMoveCount() {
+        return board.pieces();
+    }
+
+    /**
+     * The cells played so far, in order.
+     */
+    public int[] getMoves() {
+        return board.moves();
+    }
+
+    /**
+     * Replaces the board with the given game, played from the start, and leaves the turn with
+     * whoever moves next. Unlike a move, reaching the end of the game here does not call the
+     * game-over listener; check {@link #getGameState()} instead.
+     */
+    public void setMoves(boolean playerOneStarted, int[] moves) {
+        ++generation;
+        ponderedReplies.clear();
+        board.clear(!playerOneStarted);
+        for (int move : moves) {
+            board.play(move);
+        }
+        currentPlayer = board.playerTwoToMove() ? PLAYER_TWO : PLAYER_ONE;
+        isOver = checkForWinner() != CONTINUE;
+    }
+
+    /**
+     * Whether {@link #PLAYER_ONE} made the first move, or is about to on an empty board.
+     */
+    public boolean playerOneStarted() {
+        int one = Long.bitCount(board.playerOneMask());
+        int two = Long.bitCount(board.playerTwoMask());
+        return one != two ? one > two : currentPlayer == PLAYER_ONE;
     }
 
     public int[] getWinningIndices() {
@@ -248,67 +460,12 @@ public final class TicTacToeGame {
         this.gameState = gameState;
     }
 
-    public int getNextCpuMove() {
-        return nextCpuMove;
-    }
-
     public void setIsOver(boolean isOver) {
         this.isOver = isOver;
     }
 
     public void setCurrentPlayer(char currentPlayer) {
         this.currentPlayer = currentPlayer;
-    }
-
-    private List<Integer> getAvailableStates() {
-        List<Integer> availableSpaces = new ArrayList<>();
-        for (int i = 0; i < grid.length; i++) {
-            char c = grid[i];
-            if (c == NONE) {
-                availableSpaces.add(i);
-            }
-        }
-
-        return availableSpaces;
-    }
-    private int minimax(int depth, char player, int newIndex) {
-        String stateKey = Arrays.toString(grid) + player + depth;
-        if (SCORE_CACHE.containsKey(stateKey)) {
-            return SCORE_CACHE.get(stateKey);
-        }
-        List<Integer> pointsAvailable = getAvailableStates();
-        if (depth != 0) {
-            @GameState int currentResult = checkForWinner(newIndex);
-            if (currentResult == TWO_WINS) {
-                return 10 - depth;
-            } else if (currentResult == ONE_WINS) {
-                return depth - 10;
-            } else if (pointsAvailable.isEmpty()) {
-                return 0;
-            }
-        }
-
-        ++depth;
-        boolean isPlayerTwo = player == PLAYER_TWO;
-        char otherPlayer = isPlayerTwo ? PLAYER_ONE : PLAYER_TWO;
-        int runningScore = isPlayerTwo ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-        int chosenIndex = 0;
-
-        for (int i = 0; i < pointsAvailable.size(); ++i) {
-            int index = pointsAvailable.get(i);
-            makeDummyMove(index, player);
-            int score = minimax(depth, otherPlayer, index);
-            if ((isPlayerTwo && score > runningScore)
-                    || (!isPlayerTwo && score < runningScore)
-                    || (score == runningScore && random.nextBoolean())) {
-                runningScore = score;
-                chosenIndex = index;
-            }
-            grid[index] = NONE;
-        }
-
-        nextCpuMove = chosenIndex;
-        SCORE_CACHE.put(stateKey, runningScore);
-        return runningScore;
+        board.setPlayerTwoToMove(currentPlayer == PLAYER_TWO);
     }
 }
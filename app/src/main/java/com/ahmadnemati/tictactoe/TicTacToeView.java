@@ -2,198 +2,334 @@ package com.ahmadnemati.tictactoe;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.ColorStateList;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.drawable.Drawable;
+import android.graphics.Path;
+import android.graphics.Rect;
 import android.os.Build;
-import android.support.annotation.ColorRes;
-import android.support.annotation.DrawableRes;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
 import android.util.AttributeSet;
-import android.widget.FrameLayout;
-import android.widget.ImageView;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
 
+import java.util.Arrays;
 import java.util.List;
 
-import butterknife.Bind;
-import butterknife.ButterKnife;
-import butterknife.OnClick;
-
-import static android.view.View.MeasureSpec.EXACTLY;
 import static android.view.View.MeasureSpec.getSize;
-import static android.view.View.MeasureSpec.makeMeasureSpec;
+import static com.ahmadnemati.tictactoe.TicTacToeGame.NONE;
 import static com.ahmadnemati.tictactoe.TicTacToeGame.PLAYER_ONE;
 import static com.ahmadnemati.tictactoe.TicTacToeGame.PLAYER_TWO;
 
-
-public final class TicTacToeView extends FrameLayout {
+/**
+ * Draws the grid, the marks and the winning line in a single pass and hit-tests touches itself,
+ * so a board of any size is one view. Paths are built once per size change and colours resolved
+ * once, leaving nothing to allocate or look up while drawing.
+ *
+ * <p>Each cell is exposed to accessibility services as a virtual view, and the arrow keys move a
+ * focused cell that Enter plays, so the board works without touch.
+ */
+public final class TicTacToeView extends View {
 
     public interface OnTileClickListener {
         void onTileClick(int position);
     }
 
-    private static final ButterKnife.Action<ImageView> DISABLE = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setEnabled(false);
-            if (tile.getDrawable() != null) {
-                safeTint(tile, R.color.disabled);
-            }
-        }
-    };
-    private static final ButterKnife.Action<ImageView> ENABLE_BLANKS = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            boolean hasDrawable = tile.getDrawable() != null;
-            tile.setEnabled(!hasDrawable);
-            if (hasDrawable) {
-                safeTint(tile, R.color.primary);
-            }
-        }
-    };
-    private static final ButterKnife.Action<ImageView> ENABLE_ALL = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setEnabled(true);
-            safeTint(tile, R.color.primary);
-        }
-    };
-    private static final ButterKnife.Action<ImageView> RESET_IMAGE = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setImageDrawable(null);
-        }
-    };
-
-    private final Paint paint = new Paint();
-
-    @Bind({
-            R.id.zero,
-            R.id.one,
-            R.id.two,
-            R.id.three,
-            R.id.four,
-            R.id.five,
-            R.id.six,
-            R.id.seven,
-            R.id.eight,
-    })
-    protected List<ImageView> tiles;
+    private static final int NO_CELL = -1;
+
+    private final Paint gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint markPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint();
+    private final Path gridPath = new Path();
+    // Marks for a cell at the origin; drawing translates them into place.
+    private final Path crossPath = new Path();
+    private final Path circlePath = new Path();
+    private int primaryColor;
+    private int accentColor;
+    private int disabledColor;
+    private float strokeWidth;
+    private float tilePadding;
+
+    private int columns = 3;
+    private int rows = 3;
+    private char[] cells = new char[columns * rows];
+    private boolean[] winning = new boolean[columns * rows];
+    private int[] winningIndices;
+    private float cellSize;
+    private int pressedCell = NO_CELL;
+    private int focusedCell = NO_CELL;
+    private final CellAccessibilityHelper accessibilityHelper = new CellAccessibilityHelper();
 
     private char nextPlayer;
     private OnTileClickListener tileClickListener;
 
     public TicTacToeView(Context context) {
         super(context);
+        init();
     }
 
     public TicTacToeView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public TicTacToeView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init();
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     public TicTacToeView(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
+        init();
     }
 
-    private static void safeTint(ImageView imageView, @ColorRes int color) {
-        int resolvedColor = imageView.getResources().getColor(color);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            imageView.setImageTintList(ColorStateList.valueOf(resolvedColor));
-        } else {
-            Drawable drawable = imageView.getDrawable();
-            if (drawable != null) {
-                drawable.setColorFilter(resolvedColor, PorterDuff.Mode.SRC_IN);
-            }
-        }
+    private void init() {
+        primaryColor = ContextCompat.getColor(getContext(), R.color.primary);
+        accentColor = ContextCompat.getColor(getContext(), R.color.accent);
+        disabledColor = ContextCompat.getColor(getContext(), R.color.disabled);
+        strokeWidth = getResources().getDimensionPixelSize(R.dimen.stroke_width);
+        tilePadding = getResources().getDimensionPixelSize(R.dimen.tile_padding);
+
+        gridPaint.setColor(Color.BLACK);
+        gridPaint.setStyle(Paint.Style.STROKE);
+        markPaint.setStyle(Paint.Style.STROKE);
+        markPaint.setStrokeCap(Paint.Cap.ROUND);
+        pressedPaint.setColor(ContextCompat.getColor(getContext(), R.color.pressed));
+        Arrays.fill(cells, NONE);
+        setClickable(true);
+        setFocusable(true);
+        ViewCompat.setAccessibilityDelegate(this, accessibilityHelper);
     }
 
-    @Override
-    protected void onFinishInflate() {
-        super.onFinishInflate();
-        setWillNotDraw(false);
-        ButterKnife.bind(this);
-        paint.setColor(Color.BLACK);
-        paint.setStrokeWidth(getResources().getDimensionPixelSize(R.dimen.stroke_width));
+    /**
+     * Sets the number of cells across and down and clears the board.
+     */
+    public void setBoardSize(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        cells = new char[columns * rows];
+        winning = new boolean[columns * rows];
+        focusedCell = NO_CELL;
+        reset();
+        requestLayout();
+        accessibilityHelper.invalidateRoot();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int originalWidth = getSize(widthMeasureSpec);
-        int originalHeight = getSize(heightMeasureSpec);
+        int width = getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight();
+        int height = getSize(heightMeasureSpec) - getPaddingTop() - getPaddingBottom();
+        int cell = Math.min(width / columns, height / rows);
+        setMeasuredDimension(cell * columns + getPaddingLeft() + getPaddingRight(),
+                cell * rows + getPaddingTop() + getPaddingBottom());
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        cellSize = Math.min((w - getPaddingLeft() - getPaddingRight()) / (float) columns,
+                (h - getPaddingTop() - getPaddingBottom()) / (float) rows);
+        // Strokes and padding shrink on boards too dense for the full sizes.
+        float stroke = Math.min(strokeWidth, cellSize / 8);
+        float padding = Math.min(tilePadding, cellSize / 4);
+        gridPaint.setStrokeWidth(stroke);
+        markPaint.setStrokeWidth(stroke);
+
+        gridPath.reset();
+        for (int column = 1; column < columns; ++column) {
+            gridPath.moveTo(column * cellSize, 0);
+            gridPath.lineTo(column * cellSize, rows * cellSize);
+        }
+        for (int row = 1; row < rows; ++row) {
+            gridPath.moveTo(0, row * cellSize);
+            gridPath.lineTo(columns * cellSize, row * cellSize);
+        }
+
+        float inset = padding + stroke / 2;
+        crossPath.reset();
+        crossPath.moveTo(inset, inset);
+        crossPath.lineTo(cellSize - inset, cellSize - inset);
+        crossPath.moveTo(cellSize - inset, inset);
+        crossPath.lineTo(inset, cellSize - inset);
+        circlePath.reset();
+        circlePath.addCircle(cellSize / 2, cellSize / 2, cellSize / 2 - inset, Path.Direction.CW);
+    }
 
-        int width = originalWidth - getPaddingLeft() - getPaddingRight();
-        int height = originalHeight - getPaddingTop() - getPaddingBottom();
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
 
-        int limitingFactor = Math.min(width, height);
+        if (pressedCell != NO_CELL) {
+            highlight(canvas, pressedCell);
+        }
+        if (focusedCell != NO_CELL && focusedCell != pressedCell && hasFocus() && isEnabled()) {
+            highlight(canvas, focusedCell);
+        }
+        canvas.drawPath(gridPath, gridPaint);
 
-        int tileSize = limitingFactor / 3;
+        for (int i = 0; i < cells.length; ++i) {
+            if (cells[i] == NONE) {
+                continue;
+            }
+            markPaint.setColor(winning[i] ? accentColor : isEnabled() ? primaryColor : disabledColor);
+            canvas.save();
+            canvas.translate(i % columns * cellSize, i / columns * cellSize);
+            canvas.drawPath(cells[i] == PLAYER_ONE ? crossPath : circlePath, markPaint);
+            canvas.restore();
+        }
 
-        for (ImageView tile : tiles) {
-            tile.measure(makeMeasureSpec(tileSize, EXACTLY), makeMeasureSpec(tileSize, EXACTLY));
+        if (winningIndices != null) {
+            int first = winningIndices[0];
+            int last = winningIndices[winningIndices.length - 1];
+            markPaint.setColor(accentColor);
+            canvas.drawLine((first % columns + 0.5f) * cellSize, (first / columns + 0.5f) * cellSize,
+                    (last % columns + 0.5f) * cellSize, (last / columns + 0.5f) * cellSize, markPaint);
         }
+        canvas.restore();
+    }
 
-        int size = limitingFactor == width ? originalWidth : originalHeight;
-        setMeasuredDimension(size, size);
+    private void highlight(Canvas canvas, int cell) {
+        float left = cell % columns * cellSize;
+        float top = cell / columns * cellSize;
+        canvas.drawRect(left, top, left + cellSize, top + cellSize, pressedPaint);
     }
 
     @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        int currentLeft = getPaddingLeft();
-        int currentTop = getPaddingTop();
-
-        for (int i = 0; i < tiles.size(); i++) {
-            ImageView tile = tiles.get(i);
-            int measuredWidth = tile.getMeasuredWidth();
-            int measuredHeight = tile.getMeasuredHeight();
-            tile.layout(currentLeft, currentTop, currentLeft + measuredWidth, currentTop + measuredHeight);
-            currentLeft += measuredWidth;
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        if (!isEnabled()) {
+            return false;
+        }
+        int cell = cellAt(event.getX(), event.getY());
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                setPressedCell(cell);
+                return cell != NO_CELL;
+            case MotionEvent.ACTION_MOVE:
+                if (cell != pressedCell) {
+                    setPressedCell(NO_CELL);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                boolean clicked = cell != NO_CELL && cell == pressedCell;
+                setPressedCell(NO_CELL);
+                if (clicked) {
+                    performClick();
+                    onTileClicked(cell);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedCell(NO_CELL);
+                return true;
+            default:
+                return true;
+        }
+    }
 
-            if ((i + 1) % 3 == 0) {
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return accessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
 
-                currentLeft = getPaddingLeft();
-                currentTop += measuredHeight;
-            }
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        if (gainFocus && focusedCell == NO_CELL) {
+            focusedCell = 0;
         }
+        invalidate();
     }
 
     @Override
-    protected void onDraw(@NonNull Canvas canvas) {
-        super.onDraw(canvas);
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (!isEnabled() || focusedCell == NO_CELL) {
+            return super.onKeyDown(keyCode, event);
+        }
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                return moveFocus(-1, 0) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return moveFocus(1, 0) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return moveFocus(0, -1) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return moveFocus(0, 1) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                return clickCell(focusedCell);
+            default:
+                return super.onKeyDown(keyCode, event);
+        }
+    }
 
-        int size = Math.min(getWidth(), getHeight());
-        int increment = size / 3;
+    // Moves the focused cell, or returns false at the edge so focus can leave the board.
+    private boolean moveFocus(int dx, int dy) {
+        int column = focusedCell % columns + dx;
+        int row = focusedCell / columns + dy;
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return false;
+        }
+        focusedCell = row * columns + column;
+        invalidate();
+        return true;
+    }
 
+    // Plays the cell as a tap on its centre would, if it is empty and the board is enabled.
+    private boolean clickCell(int index) {
+        if (!isEnabled()
+                || cellAt(getPaddingLeft() + (index % columns + 0.5f) * cellSize,
+                        getPaddingTop() + (index / columns + 0.5f) * cellSize) != index) {
+            return false;
+        }
+        performClick();
+        onTileClicked(index);
+        accessibilityHelper.sendEventForVirtualView(index, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        return true;
+    }
 
-        int y = increment;
-        canvas.drawLine(0, y, size , y, paint);
-        y += increment;
-        canvas.drawLine(0, y, size, y, paint);
+    // The empty cell under the point, or NO_CELL.
+    private int cellAt(float x, float y) {
+        int cell = cellIndexAt(x, y);
+        return cell != NO_CELL && cells[cell] == NONE ? cell : NO_CELL;
+    }
+
+    // The cell under the point, empty or not, or NO_CELL.
+    private int cellIndexAt(float x, float y) {
+        if (cellSize == 0) {
+            return NO_CELL;
+        }
+        int column = (int) Math.floor((x - getPaddingLeft()) / cellSize);
+        int row = (int) Math.floor((y - getPaddingTop()) / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return NO_CELL;
+        }
+        return row * columns + column;
+    }
 
-        int x = increment;
-        canvas.drawLine(x, 0, x, size, paint);
-        x += increment;
-        canvas.drawLine(x, 0, x, size, paint);
+    private void setPressedCell(int cell) {
+        if (cell != pressedCell) {
+            pressedCell = cell;
+            invalidate();
+        }
     }
 
     @Override
     public void setEnabled(boolean enabled) {
         super.setEnabled(enabled);
-
-
-        if (enabled) {
-            ButterKnife.apply(tiles, ENABLE_BLANKS);
-        } else {
-            ButterKnife.apply(tiles, DISABLE);
+        if (!enabled) {
+            pressedCell = NO_CELL;
         }
+        invalidate();
     }
 
     public void setOnTileClickedListener(OnTileClickListener listener) {
@@ -204,76 +340,106 @@ public final class TicTacToeView extends FrameLayout {
         this.nextPlayer = nextPlayer;
     }
 
-    @OnClick({
-            R.id.zero,
-            R.id.one,
-            R.id.two,
-            R.id.three,
-            R.id.four,
-            R.id.five,
-            R.id.six,
-            R.id.seven,
-            R.id.eight,
-    })
-    protected void onTileClicked(final ImageView tile) {
+    private void onTileClicked(final int index) {
         if (tileClickListener != null) {
-            setTile(tile, nextPlayer);
+            setTile(index, nextPlayer);
             post(new Runnable() {
                 @Override
                 public void run() {
-                    tileClickListener.onTileClick(tiles.indexOf(tile));
+                    tileClickListener.onTileClick(index);
                 }
             });
         }
     }
 
     public void setTile(int index, char player) {
-        setTile(tiles.get(index), player);
-    }
-
-    private void setTile(ImageView tile, char player) {
-        @DrawableRes int resId;
-        if (player == PLAYER_ONE) {
-            resId = R.drawable.x;
-        } else if (player == PLAYER_TWO) {
-            resId = R.drawable.circle;
-        } else {
-            resId = -1;
-        }
-
-        if (resId != -1) {
-            tile.setEnabled(false);
-            tile.setImageResource(resId);
-        } else {
-            tile.setEnabled(true);
-            tile.setImageDrawable(null);
-        }
+        cells[index] = player == PLAYER_ONE || player == PLAYER_TWO ? player : NONE;
+        invalidate();
+        accessibilityHelper.invalidateVirtualView(index);
     }
 
     public void endGame(@Nullable final int[] winningIndices) {
-        ButterKnife.apply(tiles, DISABLE);
+        setEnabled(false);
+        this.winningIndices = winningIndices;
         if (winningIndices != null) {
-            boolean[] allIndices = {false, false, false, false, false, false, false, false, false};
             for (int i : winningIndices) {
-                allIndices[i] = true;
-            }
-            for (int i = 0; i < allIndices.length; i++) {
-                ImageView tile = tiles.get(i);
-                safeTint(tile, allIndices[i] ? R.color.accent : R.color.disabled);
-                tile.setEnabled(false);
+                winning[i] = true;
             }
         }
+        invalidate();
+        accessibilityHelper.invalidateRoot();
     }
 
     public void reset() {
-        ButterKnife.apply(tiles, ENABLE_ALL);
-        ButterKnife.apply(tiles, RESET_IMAGE);
+        Arrays.fill(cells, NONE);
+        Arrays.fill(winning, false);
+        winningIndices = null;
+        pressedCell = NO_CELL;
+        setEnabled(true);
+        accessibilityHelper.invalidateRoot();
     }
 
     public void restoreBoard(char[] gridState) {
-        for (int i = 0; i < tiles.size(); i++) {
-            ImageView tile = tiles.get(i);
-            setTile(tile, gridState[i]);
+        for (int i = 0; i < cells.length; i++) {
+            setTile(i, gridState[i]);
+        }
+    }
+
+    /**
+     * Exposes every cell, with its row, column and mark, as a virtual view that accessibility
+     * services can explore and click.
+     */
+    private final class CellAccessibilityHelper extends ExploreByTouchHelper {
+        private final Rect bounds = new Rect();
+
+        CellAccessibilityHelper() {
+            super(TicTacToeView.this);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int cell = cellIndexAt(x, y);
+            return cell == NO_CELL ? INVALID_ID : cell;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            for (int i = 0; i < cells.length; ++i) {
+                virtualViewIds.add(i);
+            }
+        }
+
+        @Override
+        protected void onPopulateEventForVirtualView(int virtualViewId, AccessibilityEvent event) {
+            event.setContentDescription(describe(virtualViewId));
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            node.setContentDescription(describe(virtualViewId));
+            int left = getPaddingLeft() + Math.round(virtualViewId % columns * cellSize);
+            int top = getPaddingTop() + Math.round(virtualViewId / columns * cellSize);
+            bounds.set(left, top, left + Math.round(cellSize), top + Math.round(cellSize));
+            node.setBoundsInParent(bounds);
+            boolean playable = isEnabled() && cells[virtualViewId] == NONE;
+            node.setEnabled(isEnabled());
+            node.setClickable(playable);
+            if (playable) {
+                node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            }
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            return action == AccessibilityNodeInfoCompat.ACTION_CLICK && clickCell(virtualViewId);
+        }
+
+        private String describe(int cell) {
+            char mark = cells[cell];
+            String content = getResources().getString(mark == PLAYER_ONE ? R.string.cell_x
+                    : mark == PLAYER_TWO ? R.string.cell_o : R.string.cell_empty);
+            return getResources().getString(R.string.cell_description, cell / columns + 1, cell % columns + 1,
+                    content);
         }
     }
 }
@@ -0,0 +1,130 @@
+package com.ahmadnemati.tictactoe;
+
+import com.ahmadnemati.tictactoe.engine.BoardGeometry;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatsStoreTest {
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.STANDARD;
+    private static final int[] MOVES = {4, 0, 8, 2, 1, 7, 6};
+
+    @Test
+    public void loadsMissingGoodAndCorruptCounters() throws Exception {
+        File directory = createDirectory();
+        try {
+            StatsStore store = new StatsStore(directory, GEOMETRY);
+            assertFalse(store.load());
+            store.addCounts(3, 2, 1);
+            store.flush();
+
+            StatsStore reloaded = new StatsStore(directory, GEOMETRY);
+            assertTrue(reloaded.load());
+            assertEquals(3, reloaded.humanWins());
+            assertEquals(2, reloaded.computerWins());
+            assertEquals(1, reloaded.ties());
+
+            FileOutputStream out = new FileOutputStream(new File(directory, StatsStore.COUNTERS_FILE));
+            out.write(new byte[] {1, 2, 3});
+            out.close();
+            StatsStore corrupt = new StatsStore(directory, GEOMETRY);
+            assertFalse(corrupt.load());
+            assertEquals(0, corrupt.humanWins());
+            assertTrue(new File(directory, StatsStore.COUNTERS_FILE + ".bad").exists());
+            // The next flush replaces the unreadable file.
+            corrupt.flush();
+            assertTrue(new StatsStore(directory, GEOMETRY).load());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void flushedGamesReadBack() throws Exception {
+        File directory = createDirectory();
+        try {
+            StatsStore store = new StatsStore(directory, GEOMETRY);
+            store.load();
+            store.recordGame(new StatsStore.GameRecord(1000, 5000, 5, true, TicTacToeGame.ONE_WINS),
+                    new int[] {4, 0, 2, 6, 3});
+            store.recordGame(new StatsStore.GameRecord(2000, 7000, MOVES.length, false, TicTacToeGame.TWO_WINS),
+                    MOVES);
+            store.flush();
+
+            List<StatsStore.GameRecord> games = store.readGames();
+            assertEquals(2, games.size());
+            assertEquals(1000, games.get(0).endedAtMillis);
+            assertEquals(5000, games.get(0).durationMillis);
+            assertEquals(5, games.get(0).moves);
+            assertTrue(games.get(0).humanStarted);
+            assertEquals(TicTacToeGame.ONE_WINS, games.get(0).result);
+            assertEquals(2000, games.get(1).endedAtMillis);
+            assertFalse(games.get(1).humanStarted);
+            assertEquals(TicTacToeGame.TWO_WINS, games.get(1).result);
+
+            StatsStore.LoggedGame last = store.lastLoggedGame();
+            assertFalse(last.humanStarted);
+            assertArrayEquals(MOVES, last.moves);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void failedFlushDoesNotWriteGamesTwice() throws Exception {
+        File directory = createDirectory();
+        try {
+            StatsStore store = new StatsStore(directory, GEOMETRY);
+            store.load();
+            store.recordGame(new StatsStore.GameRecord(1000, 5000, MOVES.length, false, TicTacToeGame.TWO_WINS),
+                    MOVES);
+            // A directory where the log and the new counters go makes both fail after the records are appended.
+            File log = new File(directory, StatsStore.LOG_FILE);
+            File temporary = new File(directory, StatsStore.COUNTERS_FILE + ".tmp");
+            assertTrue(log.mkdir() && temporary.mkdir());
+            try {
+                store.flush();
+                fail("Flush into a directory succeeded");
+            } catch (IOException expected) {
+                // Retried below.
+            }
+            assertTrue(store.hasUnflushedChanges());
+
+            assertTrue(log.delete() && temporary.delete());
+            store.flush();
+            assertFalse(store.hasUnflushedChanges());
+            assertEquals(1, store.readGames().size());
+            assertArrayEquals(MOVES, store.lastLoggedGame().moves);
+            StatsStore reloaded = new StatsStore(directory, GEOMETRY);
+            reloaded.load();
+            assertEquals(1, reloaded.computerWins());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("stats", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,114 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-depth searches on the standard board, cycling through a fixed set of start positions. The
+ * nodes counter reports nodes/s next to searches/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.STANDARD;
+
+    /** Cold clears the table before every search; warm keeps it, like the app's cache across games. */
+    @Param({"cold", "warm"})
+    public String cache;
+
+    /** The empty board, the nine first-move positions or positions four plies into random games. */
+    @Param({"empty", "firstMove", "midGame"})
+    public String start;
+
+    private TranspositionTable table;
+    private SearchEngine engine;
+    private Position[] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Same size as the app's table for the standard board.
+        table = new TranspositionTable(GEOMETRY, 16);
+        engine = new MinimaxEngine(GEOMETRY, table);
+        positions = positions(start);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if ("cold".equals(cache)) {
+            table.clear();
+        }
+    }
+
+    @Benchmark
+    public int search(NodeCounter counter) {
+        Position position = positions[next];
+        next = next + 1 == positions.length ? 0 : next + 1;
+        SearchResult result = engine.search(position, SearchLimits.NONE);
+        counter.nodes += result.getNodes();
+        return result.getMove();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class NodeCounter {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    private static Position[] positions(String start) {
+        Position empty = Position.empty(GEOMETRY, false);
+        List<Position> positions = new ArrayList<>();
+        if ("empty".equals(start)) {
+            positions.add(empty);
+        } else if ("firstMove".equals(start)) {
+            for (int cell = 0; cell < GEOMETRY.cells; ++cell) {
+                positions.add(empty.play(cell));
+            }
+        } else {
+            Random random = new Random(42);
+            while (positions.size() < 16) {
+                Position position = empty;
+                for (int ply = 0; ply < 4 && !position.isOver(); ++ply) {
+                    position = position.play(randomCell(random, position.emptyCells()));
+                }
+                if (!position.isOver()) {
+                    positions.add(position);
+                }
+            }
+        }
+        return positions.toArray(new Position[positions.size()]);
+    }
+
+    static int randomCell(Random random, long cells) {
+        for (int skip = random.nextInt(Long.bitCount(cells)); skip > 0; --skip) {
+            cells &= cells - 1;
+        }
+        return Long.numberOfTrailingZeros(cells);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deciding whether a move ends the game: the incremental check done by {@link Board#play} and
+ * {@link Board#undo}, against scanning every line of the mover's mask.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WinCheckBenchmark {
+
+    private static final int POSITIONS = 256;
+
+    @Param({"3x3k3", "4x4k4", "7x7k5"})
+    public String geometry;
+
+    private Board[] boards;
+    private long[] moverMasks;
+    private int[] moves;
+    private BoardGeometry boardGeometry;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = geometry.split("[xk]");
+        boardGeometry = new BoardGeometry(
+                Integer.parseInt(size[0]), Integer.parseInt(size[1]), Integer.parseInt(size[2]));
+        boards = new Board[POSITIONS];
+        moverMasks = new long[POSITIONS];
+        moves = new int[POSITIONS];
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; ) {
+            Board board = new Board(boardGeometry, false);
+            int plies = random.nextInt(boardGeometry.cells - 1);
+            for (int ply = 0; ply < plies && board.state() == Board.CONTINUE; ++ply) {
+                board.play(SearchBenchmark.randomCell(random, board.emptyCells()));
+            }
+            if (board.state() == Board.CONTINUE) {
+                boards[i] = board;
+                moverMasks[i] = board.ownMask();
+                moves[i] = SearchBenchmark.randomCell(random, board.emptyCells());
+                ++i;
+            }
+        }
+    }
+
+    @Benchmark
+    public int incremental() {
+        int i = next;
+        next = (next + 1) & (POSITIONS - 1);
+        Board board = boards[i];
+        int state = board.play(moves[i]);
+        board.undo();
+        return state;
+    }
+
+    @Benchmark
+    public boolean fullScan() {
+        int i = next;
+        next = (next + 1) & (POSITIONS - 1);
+        return boardGeometry.hasLine(moverMasks[i] | 1L << moves[i]);
+    }
+}
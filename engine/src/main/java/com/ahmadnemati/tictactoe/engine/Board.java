@@ -0,0 +1,288 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.Arrays;
+
+/**
+ * Mutable board with incremental bookkeeping for play and search. Every placement and undo
+ * touches only the lines through its cell: per-line mark counts decide wins as they happen, the
+ * empty-cell count decides ties, and each player's threats (empty cells that would complete one of
+ * their lines) are kept as a mask.
+ */
+public final class Board {
+
+    public static final int CONTINUE = 0;
+    public static final int TIE = 1;
+    public static final int ONE_WINS = 2;
+    public static final int TWO_WINS = 3;
+
+    private final BoardGeometry geometry;
+    private final byte[][] lineCounts;
+    // Number of each player's threatened lines missing exactly this cell.
+    private final int[][] threatCounts;
+    private final long[] threats = new long[2];
+    private final long[] masks = new long[2];
+    private final int[] moves;
+    private int moveCount;
+    private boolean playerTwoToMove;
+    private int state = CONTINUE;
+    private int winningLine = -1;
+    // Zobrist hash of the position under each of the geometry's symmetries, side to move included.
+    private final long[] hashes;
+
+    public Board(BoardGeometry geometry, boolean playerTwoToMove) {
+        this.geometry = geometry;
+        this.lineCounts = new byte[2][geometry.lines.length];
+        this.threatCounts = new int[2][geometry.cells];
+        this.moves = new int[geometry.cells];
+        this.hashes = new long[geometry.symmetries];
+        setSide(playerTwoToMove);
+    }
+
+    public Board(Position position) {
+        this(position.geometry, position.playerTwoToMove);
+        set(position);
+    }
+
+    public Board(Board other) {
+        this(other.geometry, other.playerTwoToMove);
+        copyFrom(other);
+    }
+
+    /**
+     * Makes this board a copy of {@code other}, which must be on the same geometry, without
+     * allocating.
+     */
+    public void copyFrom(Board other) {
+        if (other.geometry != geometry) {
+            throw new IllegalArgumentException("Board is not on a " + geometry + " board");
+        }
+        for (int player = 0; player < 2; ++player) {
+            System.arraycopy(other.lineCounts[player], 0, lineCounts[player], 0, lineCounts[player].length);
+            System.arraycopy(other.threatCounts[player], 0, threatCounts[player], 0, threatCounts[player].length);
+            threats[player] = other.threats[player];
+            masks[player] = other.masks[player];
+        }
+        System.arraycopy(other.moves, 0, moves, 0, other.moveCount);
+        System.arraycopy(other.hashes, 0, hashes, 0, hashes.length);
+        moveCount = other.moveCount;
+        playerTwoToMove = other.playerTwoToMove;
+        state = other.state;
+        winningLine = other.winningLine;
+    }
+
+    /**
+     * Replaces the contents of this board with {@code position}, which must be on the same geometry.
+     */
+    public void set(Position position) {
+        if (position.geometry != geometry) {
+            throw new IllegalArgumentException("Position is not on a " + geometry + " board");
+        }
+        clear(position.playerTwoToMove);
+        for (long remaining = position.playerOneMask; remaining != 0; remaining &= remaining - 1) {
+            place(Long.numberOfTrailingZeros(remaining), false);
+        }
+        for (long remaining = position.playerTwoMask; remaining != 0; remaining &= remaining - 1) {
+            place(Long.numberOfTrailingZeros(remaining), true);
+        }
+    }
+
+    /**
+     * Places a mark for the side to move, passes the turn and returns the resulting state.
+     */
+    public int play(int cell) {
+        place(cell, playerTwoToMove);
+        setSide(!playerTwoToMove);
+        return state;
+    }
+
+    /**
+     * Places a mark for {@code playerTwo} without changing the side to move.
+     */
+    public int place(int cell, boolean playerTwo) {
+        int player = playerTwo ? 1 : 0;
+        long bit = 1L << cell;
+        if (((masks[0] | masks[1]) & bit) != 0) {
+            throw new IllegalArgumentException("Cell " + cell + " is not empty");
+        }
+        int[] lines = geometry.lineIndicesThrough[cell];
+        for (int line : lines) {
+            removeThreats(line);
+        }
+        masks[player] |= bit;
+        toggleHashes(player, cell);
+        for (int line : lines) {
+            if (++lineCounts[player][line] == geometry.k && state == CONTINUE) {
+                state = playerTwo ? TWO_WINS : ONE_WINS;
+                winningLine = line;
+            }
+            addThreats(line);
+        }
+        moves[moveCount++] = cell;
+        if (state == CONTINUE && moveCount == geometry.cells) {
+            state = TIE;
+        }
+        return state;
+    }
+
+    /**
+     * Takes back the last mark and gives the turn back to whoever placed it.
+     */
+    public void undo() {
+        int cell = moves[--moveCount];
+        long bit = 1L << cell;
+        int player = (masks[1] & bit) != 0 ? 1 : 0;
+        int[] lines = geometry.lineIndicesThrough[cell];
+        for (int line : lines) {
+            removeThreats(line);
+        }
+        masks[player] &= ~bit;
+        toggleHashes(player, cell);
+        for (int line : lines) {
+            --lineCounts[player][line];
+            addThreats(line);
+        }
+        setSide(player == 1);
+        if (winningLine >= 0 && lineCounts[state == TWO_WINS ? 1 : 0][winningLine] < geometry.k) {
+            state = CONTINUE;
+            winningLine = -1;
+        } else if (state == TIE) {
+            state = CONTINUE;
+        }
+    }
+
+    public void clear(boolean playerTwoToMove) {
+        while (moveCount > 0) {
+            undo();
+        }
+        setSide(playerTwoToMove);
+    }
+
+    private void toggleHashes(int player, int cell) {
+        int base = (player * geometry.cells + cell) * hashes.length;
+        for (int s = 0; s < hashes.length; ++s) {
+            hashes[s] ^= geometry.zobristKeys[base + s];
+        }
+    }
+
+    private void setSide(boolean playerTwoToMove) {
+        if (playerTwoToMove != this.playerTwoToMove) {
+            this.playerTwoToMove = playerTwoToMove;
+            for (int s = 0; s < hashes.length; ++s) {
+                hashes[s] ^= BoardGeometry.SIDE_TO_MOVE_KEY;
+            }
+        }
+    }
+
+    /**
+     * The {@link TranspositionTable} key of this position, taken from the incrementally kept
+     * hashes: the smallest hash over the symmetries, with that symmetry in the low three bits.
+     */
+    long tableKey() {
+        long bestHash = hashes[0];
+        int bestSymmetry = 0;
+        for (int s = 1; s < hashes.length; ++s) {
+            if (hashes[s] < bestHash) {
+                bestHash = hashes[s];
+                bestSymmetry = s;
+            }
+        }
+        return (bestHash & ~7L) | bestSymmetry;
+    }
+
+    private void removeThreats(int line) {
+        for (int player = 0; player < 2; ++player) {
+            if (isThreat(player, line)) {
+                int cell = Long.numberOfTrailingZeros(geometry.lines[line] & ~masks[player]);
+                if (--threatCounts[player][cell] == 0) {
+                    threats[player] &= ~(1L << cell);
+                }
+            }
+        }
+    }
+
+    private void addThreats(int line) {
+        for (int player = 0; player < 2; ++player) {
+            if (isThreat(player, line)) {
+                int cell = Long.numberOfTrailingZeros(geometry.lines[line] & ~masks[player]);
+                if (threatCounts[player][cell]++ == 0) {
+                    threats[player] |= 1L << cell;
+                }
+            }
+        }
+    }
+
+    private boolean isThreat(int player, int line) {
+        return lineCounts[player][line] == geometry.k - 1 && lineCounts[1 - player][line] == 0;
+    }
+
+    public BoardGeometry geometry() {
+        return geometry;
+    }
+
+    public int state() {
+        return state;
+    }
+
+    public long winningLine() {
+        return winningLine < 0 ? 0 : geometry.lines[winningLine];
+    }
+
+    // Index into the geometry's lines, or -1.
+    int winningLineIndex() {
+        return winningLine;
+    }
+
+    public boolean playerTwoToMove() {
+        return playerTwoToMove;
+    }
+
+    public void setPlayerTwoToMove(boolean playerTwoToMove) {
+        setSide(playerTwoToMove);
+    }
+
+    public long playerOneMask() {
+        return masks[0];
+    }
+
+    public long playerTwoMask() {
+        return masks[1];
+    }
+
+    public long ownMask() {
+        return masks[playerTwoToMove ? 1 : 0];
+    }
+
+    public long opponentMask() {
+        return masks[playerTwoToMove ? 0 : 1];
+    }
+
+    /**
+     * Empty cells that would complete a line for the given player.
+     */
+    public long threats(boolean playerTwo) {
+        return threats[playerTwo ? 1 : 0];
+    }
+
+    public long emptyCells() {
+        return ~(masks[0] | masks[1]) & geometry.fullMask;
+    }
+
+    public int pieces() {
+        return moveCount;
+    }
+
+    /**
+     * The cells marked so far, in the order they were marked.
+     */
+    public int[] moves() {
+        return Arrays.copyOf(moves, moveCount);
+    }
+
+    public int lineCount(boolean playerTwo, int line) {
+        return lineCounts[playerTwo ? 1 : 0][line];
+    }
+
+    public Position toPosition() {
+        return new Position(geometry, masks[0], masks[1], playerTwoToMove);
+    }
+}
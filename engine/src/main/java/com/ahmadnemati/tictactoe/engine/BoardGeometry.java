@@ -0,0 +1,251 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shape of an m,n,k game: a {@code width} by {@code height} board won by {@code k} marks in a row.
+ * Cell {@code y * width + x} is bit {@code y * width + x} of a player's mask, so boards are limited
+ * to 64 cells. Everything here is precomputed once and shared between games.
+ */
+public final class BoardGeometry {
+
+    public static final int MAX_CELLS = 64;
+
+    public static final BoardGeometry STANDARD = new BoardGeometry(3, 3, 3);
+
+    public final int width;
+    public final int height;
+    public final int k;
+    public final int cells;
+    public final long fullMask;
+
+    /** Every run of k cells in a row, column or diagonal. */
+    final long[] lines;
+    /** Indices into {@link #lines} of the lines that contain each cell. */
+    final int[][] lineIndicesThrough;
+    /** Cells ordered from the most to the fewest lines through them, center first on ties. */
+    final int[] moveOrder;
+
+    /** Rotations and reflections that map the board onto itself; 8 for square boards, 4 otherwise. */
+    public final int symmetries;
+    /** Cell i moves to cellMapping[s][i] under symmetry s; inverseMapping undoes it. */
+    final int[][] cellMapping;
+    final int[][] inverseMapping;
+    // Mask images, one 256-entry table per symmetry and per byte of the mask.
+    private final long[][][] byteMapping;
+
+    /** XORed into a position's Zobrist hash whenever the side to move changes. */
+    static final long SIDE_TO_MOVE_KEY = 0x6A09E667F3BCC909L;
+    /**
+     * Zobrist keys by player, cell and symmetry: the key of player p's mark on cell i, as seen
+     * under symmetry s, is at {@code (p * cells + i) * symmetries + s}. Fixed for a geometry, so
+     * hashes stay valid across runs.
+     */
+    final long[] zobristKeys;
+
+    public BoardGeometry(int width, int height, int k) {
+        if (width < 1 || height < 1 || width * height > MAX_CELLS) {
+            throw new IllegalArgumentException("Unsupported board " + width + "x" + height);
+        }
+        if (k < 1 || k > Math.max(width, height)) {
+            throw new IllegalArgumentException("Unsupported k " + k + " for " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.k = k;
+        this.cells = width * height;
+        this.fullMask = cells == MAX_CELLS ? -1L : (1L << cells) - 1;
+
+        lines = generateLines();
+        lineIndicesThrough = new int[cells][];
+        for (int i = 0; i < cells; ++i) {
+            List<Integer> through = new ArrayList<>();
+            for (int j = 0; j < lines.length; ++j) {
+                if ((lines[j] & (1L << i)) != 0) {
+                    through.add(j);
+                }
+            }
+            lineIndicesThrough[i] = new int[through.size()];
+            for (int j = 0; j < through.size(); ++j) {
+                lineIndicesThrough[i][j] = through.get(j);
+            }
+        }
+        moveOrder = generateMoveOrder();
+
+        int[][] mappings = new int[8][];
+        int count = 0;
+        for (int s = 0; s < 8; ++s) {
+            int[] mapping = generateMapping(s);
+            if (mapping != null) {
+                mappings[count++] = mapping;
+            }
+        }
+        symmetries = count;
+        cellMapping = Arrays.copyOf(mappings, count);
+        inverseMapping = new int[count][cells];
+        byteMapping = new long[count][(cells + 7) / 8][256];
+        for (int s = 0; s < count; ++s) {
+            for (int i = 0; i < cells; ++i) {
+                inverseMapping[s][cellMapping[s][i]] = i;
+            }
+            for (int b = 0; b < byteMapping[s].length; ++b) {
+                for (int value = 1; value < 256; ++value) {
+                    int lowest = Integer.numberOfTrailingZeros(value);
+                    int cell = b * 8 + lowest;
+                    long image = cell < cells ? 1L << cellMapping[s][cell] : 0;
+                    byteMapping[s][b][value] = byteMapping[s][b][value & (value - 1)] | image;
+                }
+            }
+        }
+
+        long[] cellKeys = new long[2 * cells];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < cellKeys.length; ++i) {
+            seed += 0x9E3779B97F4A7C15L;
+            cellKeys[i] = mix(seed);
+        }
+        zobristKeys = new long[2 * cells * count];
+        for (int player = 0; player < 2; ++player) {
+            for (int i = 0; i < cells; ++i) {
+                for (int s = 0; s < count; ++s) {
+                    zobristKeys[(player * cells + i) * count + s] = cellKeys[player * cells + cellMapping[s][i]];
+                }
+            }
+        }
+    }
+
+    /**
+     * The Zobrist hash of a position as seen under {@code symmetry}, computed from scratch. A
+     * {@link Board} keeps the same hashes up to date as marks come and go.
+     */
+    long zobrist(long playerOneMask, long playerTwoMask, boolean playerTwoToMove, int symmetry) {
+        long hash = playerTwoToMove ? SIDE_TO_MOVE_KEY : 0;
+        for (long remaining = playerOneMask; remaining != 0; remaining &= remaining - 1) {
+            hash ^= zobristKeys[Long.numberOfTrailingZeros(remaining) * symmetries + symmetry];
+        }
+        for (long remaining = playerTwoMask; remaining != 0; remaining &= remaining - 1) {
+            hash ^= zobristKeys[(cells + Long.numberOfTrailingZeros(remaining)) * symmetries + symmetry];
+        }
+        return hash;
+    }
+
+    // SplitMix64's finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public boolean isStandard() {
+        return width == 3 && height == 3 && k == 3;
+    }
+
+    public long permute(long mask, int symmetry) {
+        long[][] tables = byteMapping[symmetry];
+        long image = 0;
+        for (int b = 0; b < tables.length; ++b) {
+            image |= tables[b][(int) (mask >>> (b * 8)) & 0xFF];
+        }
+        return image;
+    }
+
+    public boolean hasLine(long mask) {
+        for (long line : lines) {
+            if ((mask & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] generateLines() {
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+        List<Long> generated = new ArrayList<>();
+        for (int[] direction : directions) {
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    int endX = x + direction[0] * (k - 1);
+                    int endY = y + direction[1] * (k - 1);
+                    if (endX < 0 || endX >= width || endY < 0 || endY >= height) {
+                        continue;
+                    }
+                    long line = 0;
+                    for (int i = 0; i < k; ++i) {
+                        line |= 1L << ((y + direction[1] * i) * width + x + direction[0] * i);
+                    }
+                    if (!generated.contains(line)) {
+                        generated.add(line);
+                    }
+                }
+            }
+        }
+        long[] result = new long[generated.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = generated.get(i);
+        }
+        return result;
+    }
+
+    private int[] generateMoveOrder() {
+        Integer[] order = new Integer[cells];
+        for (int i = 0; i < cells; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (lineIndicesThrough[a].length != lineIndicesThrough[b].length) {
+                    return lineIndicesThrough[b].length - lineIndicesThrough[a].length;
+                }
+                return centerDistance(a) - centerDistance(b);
+            }
+        });
+        int[] result = new int[cells];
+        for (int i = 0; i < cells; ++i) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    // Doubled so it stays integral on even-sized boards.
+    private int centerDistance(int cell) {
+        int dx = 2 * (cell % width) - (width - 1);
+        int dy = 2 * (cell / width) - (height - 1);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Symmetry s mirrors the board when s >= 4 and then rotates it by s % 4 quarter turns. Returns
+     * null when the result does not have the board's shape.
+     */
+    private int[] generateMapping(int s) {
+        if (width != height && s % 2 != 0) {
+            return null;
+        }
+        int[] mapping = new int[cells];
+        for (int i = 0; i < cells; ++i) {
+            int x = s < 4 ? i % width : width - 1 - i % width;
+            int y = i / width;
+            int w = width;
+            int h = height;
+            for (int r = 0; r < s % 4; ++r) {
+                int rotated = h - 1 - y;
+                y = x;
+                x = rotated;
+                int swap = w;
+                w = h;
+                h = swap;
+            }
+            mapping[i] = y * width + x;
+        }
+        return mapping;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " k=" + k;
+    }
+}
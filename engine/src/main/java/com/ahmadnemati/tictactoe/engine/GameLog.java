@@ -0,0 +1,178 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only file of played games. Each game is stored as who started and its moves, which is
+ * enough to replay it: a byte holding the move count, with the top bit set when player two
+ * started, and then the moves packed four bits each on boards of up to 16 cells or a byte each on
+ * larger ones. A 3x3 game takes at most six bytes.
+ *
+ * <p>The file starts with a 12-byte header (magic, version, width, height, k and bits per move).
+ * {@link #scan} maps the file and decodes it in one sequential pass without allocating per game.
+ * A game cut short by a crash mid-append is dropped the next time the log is opened.
+ */
+public final class GameLog implements Closeable {
+
+    static final int MAGIC = 0x5454474C; // "TTGL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    private static final int PLAYER_TWO_STARTED = 0x80;
+
+    /**
+     * Receives each game of a scan. The moves array is reused between games, and only its first
+     * {@code count} entries belong to the current one.
+     */
+    public interface Visitor {
+        void visit(boolean playerTwoStarted, int[] moves, int count);
+    }
+
+    private final RandomAccessFile file;
+    private final BoardGeometry geometry;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private GameLog(RandomAccessFile file, BoardGeometry geometry) {
+        this.file = file;
+        this.geometry = geometry;
+    }
+
+    /**
+     * Opens or creates {@code path} for appending games on {@code geometry}. A log kept for another
+     * board is refused rather than overwritten.
+     */
+    public static GameLog open(File path, BoardGeometry geometry) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            long length = file.length();
+            if (length == 0) {
+                writeHeader(file, geometry);
+                length = HEADER_SIZE;
+            } else {
+                ByteBuffer buffer = map(file.getChannel(), geometry);
+                length = decode(buffer, geometry, null);
+                file.setLength(length);
+            }
+            file.seek(length);
+            return new GameLog(file, geometry);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a game for the next {@link #flush()}.
+     */
+    public void append(boolean playerTwoStarted, int[] moves, int count) {
+        if (count < 0 || count > geometry.cells) {
+            throw new IllegalArgumentException("Bad move count " + count);
+        }
+        pending.write(count | (playerTwoStarted ? PLAYER_TWO_STARTED : 0));
+        if (bitsPerMove(geometry) == 4) {
+            for (int i = 0; i < count; i += 2) {
+                pending.write(moves[i] | (i + 1 < count ? moves[i + 1] << 4 : 0));
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                pending.write(moves[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the queued games to the end of the file and forces them to storage.
+     */
+    public void flush() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        file.write(pending.toByteArray());
+        file.getFD().sync();
+        pending.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Hands every complete game in the log at {@code path} to {@code visitor}, oldest first. A
+     * missing file holds no games.
+     */
+    public static void scan(File path, BoardGeometry geometry, Visitor visitor) throws IOException {
+        if (!path.exists()) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            decode(map(file.getChannel(), geometry), geometry, visitor);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, BoardGeometry geometry) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION
+                || buffer.get(8) != geometry.width
+                || buffer.get(9) != geometry.height
+                || buffer.get(10) != geometry.k
+                || buffer.get(11) != bitsPerMove(geometry)) {
+            throw new IOException("Not a game log for a " + geometry + " board");
+        }
+        return buffer;
+    }
+
+    // Returns the offset just past the last complete game.
+    private static int decode(ByteBuffer buffer, BoardGeometry geometry, Visitor visitor) {
+        boolean packed = bitsPerMove(geometry) == 4;
+        int[] moves = new int[geometry.cells];
+        int limit = buffer.limit();
+        int offset = HEADER_SIZE;
+        while (offset < limit) {
+            int head = buffer.get(offset) & 0xFF;
+            int count = head & ~PLAYER_TWO_STARTED;
+            int end = offset + 1 + (packed ? (count + 1) / 2 : count);
+            if (count > geometry.cells || end > limit) {
+                break;
+            }
+            if (visitor != null) {
+                for (int i = 0; i < count; ++i) {
+                    moves[i] = packed
+                            ? (buffer.get(offset + 1 + i / 2) >> (i % 2 * 4)) & 0xF
+                            : buffer.get(offset + 1 + i) & 0xFF;
+                }
+                visitor.visit((head & PLAYER_TWO_STARTED) != 0, moves, count);
+            }
+            offset = end;
+        }
+        return offset;
+    }
+
+    private static int bitsPerMove(BoardGeometry geometry) {
+        return geometry.cells <= 16 ? 4 : 8;
+    }
+
+    private static void writeHeader(RandomAccessFile file, BoardGeometry geometry) throws IOException {
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+        file.writeByte(geometry.width);
+        file.writeByte(geometry.height);
+        file.writeByte(geometry.k);
+        file.writeByte(bitsPerMove(geometry));
+    }
+}
@@ -0,0 +1,90 @@
+package com.ahmadnemati.tictactoe.engine;
+
+/**
+ * Aggregates a {@link GameLog} scan by replaying every game: results, how often each cell was
+ * the opening move, and which lines each player won on.
+ */
+public final class GameLogSummary implements GameLog.Visitor {
+
+    private final BoardGeometry geometry;
+    private final Board board;
+    private final long[] openings;
+    // Indexed [player][line].
+    private final long[][] winLines;
+    private long games;
+    private long playerOneWins;
+    private long playerTwoWins;
+    private long ties;
+
+    public GameLogSummary(BoardGeometry geometry) {
+        this.geometry = geometry;
+        board = new Board(geometry, false);
+        openings = new long[geometry.cells];
+        winLines = new long[2][geometry.lines.length];
+    }
+
+    @Override
+    public void visit(boolean playerTwoStarted, int[] moves, int count) {
+        ++games;
+        board.clear(playerTwoStarted);
+        for (int i = 0; i < count && board.state() == Board.CONTINUE; ++i) {
+            board.play(moves[i]);
+        }
+        if (count > 0) {
+            ++openings[moves[0]];
+        }
+        switch (board.state()) {
+            case Board.ONE_WINS:
+                ++playerOneWins;
+                ++winLines[0][board.winningLineIndex()];
+                break;
+            case Board.TWO_WINS:
+                ++playerTwoWins;
+                ++winLines[1][board.winningLineIndex()];
+                break;
+            case Board.TIE:
+                ++ties;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public long games() {
+        return games;
+    }
+
+    public long playerOneWins() {
+        return playerOneWins;
+    }
+
+    public long playerTwoWins() {
+        return playerTwoWins;
+    }
+
+    public long ties() {
+        return ties;
+    }
+
+    /**
+     * Games whose first move was {@code cell}.
+     */
+    public long openings(int cell) {
+        return openings[cell];
+    }
+
+    public int lineCount() {
+        return geometry.lines.length;
+    }
+
+    /**
+     * The cells of line {@code line}, numbered as for {@link #winsOnLine}.
+     */
+    public long lineMask(int line) {
+        return geometry.lines[line];
+    }
+
+    public long winsOnLine(boolean playerTwo, int line) {
+        return winLines[playerTwo ? 1 : 0][line];
+    }
+}
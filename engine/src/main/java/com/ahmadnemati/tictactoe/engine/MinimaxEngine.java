@@ -0,0 +1,499 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Iterative-deepening alpha-beta search over a pair of player masks on any {@link BoardGeometry}.
+ * Plain Java so the build can run it to generate the solved-position table.
+ */
+public final class MinimaxEngine implements SearchEngine {
+
+    /** A win scores {@code WIN_SCORE} minus the marks on the board when it happens; a loss the negation. */
+    public static final int WIN_SCORE = 30000;
+    static final int INFINITY = WIN_SCORE + 1;
+    /** Heuristic scores stay below every win or loss. */
+    static final int MAX_EVALUATION = WIN_SCORE / 2;
+
+    private final BoardGeometry geometry;
+    private final TranspositionTable table;
+    private final ForkJoinPool pool;
+    private final Random seeds = new Random();
+    private final int[] lineWeights;
+    // Searchers keep their boards and root tasks between searches, so that a search allocates
+    // nothing but its result once every thread has searched once.
+    private final ThreadLocal<Searcher> searchers = new ThreadLocal<Searcher>() {
+        @Override
+        protected Searcher initialValue() {
+            return new Searcher();
+        }
+    };
+    private final ThreadLocal<Searcher> workers = new ThreadLocal<Searcher>() {
+        @Override
+        protected Searcher initialValue() {
+            return new Searcher();
+        }
+    };
+
+    public MinimaxEngine(BoardGeometry geometry, TranspositionTable table) {
+        this(geometry, table, null);
+    }
+
+    /**
+     * With a pool, every iteration after the first searches the previous best root move on the
+     * calling thread and then splits the remaining root moves across the pool.
+     */
+    public MinimaxEngine(BoardGeometry geometry, TranspositionTable table, ForkJoinPool pool) {
+        this.geometry = geometry;
+        this.table = table;
+        this.pool = pool;
+        lineWeights = new int[geometry.k];
+        for (int i = 1; i < geometry.k; ++i) {
+            lineWeights[i] = 1 << Math.min(2 * (i - 1), 12);
+        }
+    }
+
+    /**
+     * Iteratively deepens up to the depth limit, or to the end of the game, and returns one of the
+     * best moves at random from the last depth that completed. With a time or node budget the
+     * search stops when it runs out; the first ply always completes unless the limits' stop flag
+     * is set.
+     */
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        if (position.geometry != geometry) {
+            throw new IllegalArgumentException("Position is not on a " + geometry + " board");
+        }
+        long start = System.nanoTime();
+        table.newSearch();
+        Searcher searcher = searchers.get();
+        searcher.reset(position, start + limits.timeBudgetNanos, limits.stop);
+        searcher.run(limits);
+        return new SearchResult(searcher.move, searcher.score, searcher.depth, searcher.principalVariation(),
+                searcher.selectiveDepth, searcher.nodes, searcher.cutoffs, searcher.tableHits,
+                searcher.tableMisses, System.nanoTime() - start);
+    }
+
+    /**
+     * Counts the lines each side can still complete, weighted by how many marks it already has in
+     * them, from the point of view of the side to move.
+     */
+    private int evaluate(Board board) {
+        boolean playerTwoToMove = board.playerTwoToMove();
+        int score = 0;
+        for (int line = 0; line < geometry.lines.length; ++line) {
+            int ownMarks = board.lineCount(playerTwoToMove, line);
+            int opponentMarks = board.lineCount(!playerTwoToMove, line);
+            if (opponentMarks == 0) {
+                score += lineWeights[ownMarks];
+            } else if (ownMarks == 0) {
+                score -= lineWeights[opponentMarks];
+            }
+        }
+        return Math.max(-MAX_EVALUATION, Math.min(MAX_EVALUATION, score));
+    }
+
+    /**
+     * State of one search, or of one root move in a parallel search. Never shared between threads.
+     */
+    private final class Searcher {
+        private final Board board = new Board(geometry, false);
+        private final Random random;
+        private RootMove[] rootMoves;
+        private RootSplit rootSplit;
+        private long deadline;
+        private boolean hasDeadline;
+        // Long.MAX_VALUE until armed with the limits' node budget after the first ply.
+        private long maxNodes;
+        private AtomicBoolean stop;
+        private boolean aborted;
+        private int rootPieces;
+        // Plain fields, each only touched by its own thread; workers' counts are added to the
+        // parent's once their root move is done.
+        private long nodes;
+        private long cutoffs;
+        private long tableHits;
+        private long tableMisses;
+        private int selectiveDepth;
+
+        int move;
+        int score;
+        int depth;
+
+        Searcher() {
+            synchronized (seeds) {
+                random = new Random(seeds.nextLong());
+            }
+        }
+
+        void reset(Position position, long deadline, AtomicBoolean stop) {
+            board.set(position);
+            rootPieces = board.pieces();
+            this.deadline = deadline;
+            hasDeadline = false;
+            maxNodes = Long.MAX_VALUE;
+            this.stop = stop;
+            aborted = false;
+            nodes = 0;
+            cutoffs = 0;
+            tableHits = 0;
+            tableMisses = 0;
+            selectiveDepth = 0;
+            move = -1;
+            score = 0;
+            depth = 0;
+        }
+
+        // Makes this a worker for one root move of the parent; it checks the clock on its first
+        // node so that tasks that start after the deadline stop at once.
+        void reset(Searcher parent) {
+            board.copyFrom(parent.board);
+            rootPieces = parent.rootPieces;
+            deadline = parent.deadline;
+            hasDeadline = parent.hasDeadline;
+            maxNodes = parent.maxNodes;
+            stop = parent.stop;
+            aborted = false;
+            nodes = -1;
+            cutoffs = 0;
+            tableHits = 0;
+            tableMisses = 0;
+            selectiveDepth = 0;
+        }
+
+        void run(SearchLimits limits) {
+            boolean playerTwoToMove = board.playerTwoToMove();
+            long candidates = board.emptyCells();
+            int maxDepth = Math.min(limits.maxDepth, Long.bitCount(candidates));
+            if (board.state() != Board.CONTINUE) {
+                return;
+            }
+
+            long stateKey = board.tableKey();
+            int cached = table.get(stateKey);
+            if (cached == TranspositionTable.MISSING) {
+                ++tableMisses;
+            } else {
+                ++tableHits;
+            }
+            if (cached != TranspositionTable.MISSING
+                    && TranspositionTable.bound(cached) == TranspositionTable.EXACT
+                    && TranspositionTable.depth(cached) >= maxDepth
+                    && table.move(stateKey, cached) >= 0) {
+                move = table.move(stateKey, cached);
+                score = TranspositionTable.score(cached);
+                depth = TranspositionTable.depth(cached);
+                return;
+            }
+
+            long wins = board.threats(playerTwoToMove);
+            if (wins != 0) {
+                move = Long.numberOfTrailingZeros(wins);
+                score = WIN_SCORE - board.pieces() - 1;
+                depth = 1;
+                return;
+            }
+            long blocks = board.threats(!playerTwoToMove);
+            if (blocks != 0) {
+                candidates = blocks;
+            }
+
+            for (int d = 1; d <= maxDepth; ++d) {
+                if (stop != null && stop.get()) {
+                    break;
+                }
+                int index = searchRoot(stateKey, candidates, d, move);
+                if (aborted) {
+                    break;
+                }
+                move = index;
+                depth = d;
+                if (Math.abs(score) > MAX_EVALUATION) {
+                    break;
+                }
+                // Armed after the first ply so there is always a move to return.
+                hasDeadline = limits.timeBudgetNanos > 0;
+                maxNodes = limits.maxNodes;
+                if ((hasDeadline && System.nanoTime() - deadline > 0) || nodes >= maxNodes) {
+                    break;
+                }
+            }
+        }
+
+        private int searchRoot(long stateKey, long candidates, int depth, int previousBest) {
+            if (pool != null && previousBest >= 0 && Long.bitCount(candidates) > 1) {
+                return searchRootInParallel(stateKey, candidates, depth, previousBest);
+            }
+            // Searching with alpha one below the best score keeps ties exact, so they can be broken at random.
+            int runningScore = -INFINITY;
+            int chosenIndex = -1;
+            int ties = 0;
+            for (int i = -1; i < geometry.cells; ++i) {
+                int index = i < 0 ? previousBest : geometry.moveOrder[i];
+                if (index < 0 || (i >= 0 && index == previousBest) || (candidates & (1L << index)) == 0) {
+                    continue;
+                }
+                board.play(index);
+                int score = -negamax(depth - 1, -INFINITY, 1 - runningScore);
+                board.undo();
+                if (aborted) {
+                    return -1;
+                }
+                if (score > runningScore) {
+                    runningScore = score;
+                    chosenIndex = index;
+                    ties = 1;
+                } else if (score == runningScore && random.nextInt(++ties) == 0) {
+                    chosenIndex = index;
+                }
+            }
+
+            this.score = runningScore;
+            table.put(stateKey, runningScore, TranspositionTable.EXACT, depth, chosenIndex);
+            return chosenIndex;
+        }
+
+        private int searchRootInParallel(long stateKey, long candidates, int depth, int previousBest) {
+            board.play(previousBest);
+            int runningScore = -negamax(depth - 1, -INFINITY, INFINITY);
+            board.undo();
+            if (aborted) {
+                return -1;
+            }
+
+            if (rootMoves == null) {
+                rootMoves = new RootMove[geometry.cells];
+                for (int i = 0; i < rootMoves.length; ++i) {
+                    rootMoves[i] = new RootMove(this);
+                }
+                rootSplit = new RootSplit(rootMoves);
+            }
+            int count = 0;
+            for (int index : geometry.moveOrder) {
+                if (index != previousBest && (candidates & (1L << index)) != 0) {
+                    rootMoves[count++].prepare(index, depth, runningScore);
+                }
+            }
+            rootSplit.reinitialize();
+            rootSplit.count = count;
+            pool.invoke(rootSplit);
+
+            int chosenIndex = previousBest;
+            int ties = 1;
+            for (int i = 0; i < count; ++i) {
+                RootMove move = rootMoves[i];
+                nodes += move.nodes;
+                cutoffs += move.cutoffs;
+                tableHits += move.tableHits;
+                tableMisses += move.tableMisses;
+                selectiveDepth = Math.max(selectiveDepth, move.selectiveDepth);
+                if (move.aborted) {
+                    aborted = true;
+                }
+                if (aborted) {
+                    continue;
+                }
+                if (move.score > runningScore) {
+                    runningScore = move.score;
+                    chosenIndex = move.index;
+                    ties = 1;
+                } else if (move.score == runningScore && random.nextInt(++ties) == 0) {
+                    chosenIndex = move.index;
+                }
+            }
+            if (aborted) {
+                return -1;
+            }
+
+            this.score = runningScore;
+            table.put(stateKey, runningScore, TranspositionTable.EXACT, depth, chosenIndex);
+            return chosenIndex;
+        }
+
+        /**
+         * Follows the best moves stored in the table from the root for up to the completed depth.
+         */
+        int[] principalVariation() {
+            int[] moves = new int[Math.max(0, Math.min(depth, Long.bitCount(board.emptyCells())))];
+            int length = 0;
+            int next = move;
+            while (next >= 0 && length < moves.length && (board.emptyCells() & (1L << next)) != 0) {
+                moves[length++] = next;
+                if (board.play(next) != Board.CONTINUE) {
+                    break;
+                }
+                long stateKey = board.tableKey();
+                int cached = table.get(stateKey);
+                next = cached == TranspositionTable.MISSING ? -1 : table.move(stateKey, cached);
+            }
+            for (int i = 0; i < length; ++i) {
+                board.undo();
+            }
+            return length == moves.length ? moves : Arrays.copyOf(moves, length);
+        }
+
+        /**
+         * Alpha-beta search in negamax form over the board, which is left as it was found. Scores
+         * are from the point of view of the side to move; a win scores higher the fewer marks are
+         * on the board.
+         */
+        int negamax(int depth, int alpha, int beta) {
+            if ((++nodes & 1023) == 0 && ((hasDeadline && System.nanoTime() - deadline > 0)
+                    || nodes >= maxNodes || (stop != null && stop.get()))) {
+                aborted = true;
+            }
+            if (aborted) {
+                return 0;
+            }
+            int ply = board.pieces() - rootPieces;
+            if (ply > selectiveDepth) {
+                selectiveDepth = ply;
+            }
+            long empty = board.emptyCells();
+            if (empty == 0) {
+                return 0;
+            }
+            boolean playerTwoToMove = board.playerTwoToMove();
+            int pieces = board.pieces();
+            if (board.threats(playerTwoToMove) != 0) {
+                return WIN_SCORE - pieces - 1;
+            }
+
+            long candidates = empty;
+            long blocks = board.threats(!playerTwoToMove);
+            if (blocks != 0) {
+                if ((blocks & (blocks - 1)) != 0) {
+                    return pieces + 2 - WIN_SCORE;
+                }
+                candidates = blocks;
+            } else if (depth <= 0) {
+                return evaluate(board);
+            }
+
+            long stateKey = board.tableKey();
+            int cached = table.get(stateKey);
+            int cachedMove = -1;
+            if (cached == TranspositionTable.MISSING) {
+                ++tableMisses;
+            } else {
+                ++tableHits;
+                if (TranspositionTable.depth(cached) >= depth) {
+                    int score = TranspositionTable.score(cached);
+                    switch (TranspositionTable.bound(cached)) {
+                        case TranspositionTable.EXACT:
+                            return score;
+                        case TranspositionTable.LOWER_BOUND:
+                            alpha = Math.max(alpha, score);
+                            break;
+                        default:
+                            beta = Math.min(beta, score);
+                    }
+                    if (alpha >= beta) {
+                        return score;
+                    }
+                }
+                cachedMove = table.move(stateKey, cached);
+            }
+
+            int originalAlpha = alpha;
+            int runningScore = -INFINITY;
+            int chosenIndex = -1;
+            for (int i = -1; i < geometry.cells; ++i) {
+                int index = i < 0 ? cachedMove : geometry.moveOrder[i];
+                if (index < 0 || (i >= 0 && index == cachedMove) || (candidates & (1L << index)) == 0) {
+                    continue;
+                }
+                board.play(index);
+                int score = -negamax(depth - 1, -beta, -alpha);
+                board.undo();
+                if (aborted) {
+                    return 0;
+                }
+                if (score > runningScore) {
+                    runningScore = score;
+                    chosenIndex = index;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            ++cutoffs;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int bound = runningScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                    : runningScore >= beta ? TranspositionTable.LOWER_BOUND
+                    : TranspositionTable.EXACT;
+            table.put(stateKey, runningScore, bound, depth, chosenIndex);
+            return runningScore;
+        }
+    }
+
+    private final class RootMove extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Searcher parent;
+        private int depth;
+        private int alpha;
+        int index;
+        int score;
+        long nodes;
+        long cutoffs;
+        long tableHits;
+        long tableMisses;
+        int selectiveDepth;
+        boolean aborted;
+
+        RootMove(Searcher parent) {
+            this.parent = parent;
+        }
+
+        void prepare(int index, int depth, int alpha) {
+            reinitialize();
+            this.index = index;
+            this.depth = depth;
+            this.alpha = alpha;
+        }
+
+        @Override
+        protected void compute() {
+            Searcher worker = workers.get();
+            worker.reset(parent);
+            worker.board.play(index);
+            // Alpha one below the first move's score keeps ties exact, as in the sequential root.
+            score = -worker.negamax(depth - 1, -INFINITY, 1 - alpha);
+            nodes = worker.nodes + 1;
+            cutoffs = worker.cutoffs;
+            tableHits = worker.tableHits;
+            tableMisses = worker.tableMisses;
+            selectiveDepth = worker.selectiveDepth;
+            aborted = worker.aborted;
+        }
+    }
+
+    private static final class RootSplit extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RootMove[] moves;
+        int count;
+
+        RootSplit(RootMove[] moves) {
+            this.moves = moves;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = count - 1; i > 0; --i) {
+                moves[i].fork();
+            }
+            moves[0].invoke();
+            for (int i = 1; i < count; ++i) {
+                moves[i].join();
+            }
+        }
+    }
+}
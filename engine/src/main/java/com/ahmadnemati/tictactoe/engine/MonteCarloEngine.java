@@ -0,0 +1,356 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Monte Carlo tree search with UCT selection, for boards too big for full-width search to see
+ * far within an interactive budget.
+ *
+ * <p>Each tree lives in parallel primitive arrays indexed by node, with every node's children
+ * stored next to each other, and is reused from search to search by its thread. Playouts run on a
+ * {@link Board}: a side that can complete a line does, one that must block does, and otherwise it
+ * plays a random empty cell.
+ *
+ * <p>With a pool, every worker grows its own tree from the root for its share of the iterations
+ * and the root statistics are summed at the end.
+ */
+public final class MonteCarloEngine implements SearchEngine {
+
+    public static final int DEFAULT_TREE_NODES = 1 << 18;
+    /** Iterations when the limits set neither a node nor a time budget. */
+    public static final long DEFAULT_ITERATIONS = 20000;
+
+    private static final double EXPLORATION = 1.4;
+
+    private final BoardGeometry geometry;
+    private final int treeNodes;
+    private final ForkJoinPool pool;
+    private final Random seeds = new Random();
+    private final ThreadLocal<Tree> trees = new ThreadLocal<Tree>() {
+        @Override
+        protected Tree initialValue() {
+            synchronized (seeds) {
+                return new Tree(treeNodes, seeds.nextLong());
+            }
+        }
+    };
+
+    public MonteCarloEngine(BoardGeometry geometry) {
+        this(geometry, DEFAULT_TREE_NODES, null);
+    }
+
+    /**
+     * An engine whose trees hold at most {@code treeNodes} nodes each, split between the workers
+     * when there is a pool. A full tree stops growing and keeps running playouts from its leaves.
+     */
+    public MonteCarloEngine(BoardGeometry geometry, int treeNodes, ForkJoinPool pool) {
+        this.geometry = geometry;
+        this.pool = pool;
+        this.treeNodes = pool == null ? treeNodes : Math.max(geometry.cells + 1, treeNodes / pool.getParallelism());
+    }
+
+    /**
+     * Runs iterations until the node budget, the time budget or the stop flag runs out, and
+     * returns the most visited root move. The score scales the move's mean playout result to
+     * {@code -MinimaxEngine.MAX_EVALUATION..MinimaxEngine.MAX_EVALUATION}, except that a win on
+     * the spot scores as in minimax. Without a node or time budget the search runs
+     * {@link #DEFAULT_ITERATIONS} iterations.
+     */
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        if (position.geometry != geometry) {
+            throw new IllegalArgumentException("Position is not on a " + geometry + " board");
+        }
+        long start = System.nanoTime();
+        if (position.isOver()) {
+            return new SearchResult(-1, 0, 0, new int[0], 0, System.nanoTime() - start);
+        }
+        long wins = new Board(position).threats(position.playerTwoToMove);
+        if (wins != 0) {
+            int move = Long.numberOfTrailingZeros(wins);
+            return new SearchResult(move, MinimaxEngine.WIN_SCORE - position.pieces() - 1, 1,
+                    new int[] {move}, 1, System.nanoTime() - start);
+        }
+
+        long iterations = limits.hasBudget() ? limits.maxNodes : DEFAULT_ITERATIONS;
+        long deadline = limits.timeBudgetNanos > 0 ? start + limits.timeBudgetNanos : 0;
+        Playouts total;
+        if (pool == null) {
+            total = new Playouts(geometry.cells);
+            total.run(position, iterations, deadline, limits.stop);
+        } else {
+            int workers = pool.getParallelism();
+            final Playouts[] parts = new Playouts[workers];
+            long share = iterations / workers + (iterations % workers == 0 ? 0 : 1);
+            for (int i = 0; i < workers; ++i) {
+                parts[i] = new Playouts(geometry.cells);
+                parts[i].prepare(position, share, deadline, limits.stop);
+            }
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(parts);
+                }
+            });
+            total = parts[0];
+            for (int i = 1; i < workers; ++i) {
+                total.add(parts[i]);
+            }
+        }
+
+        int best = -1;
+        for (int move = 0; move < geometry.cells; ++move) {
+            if (total.visits[move] > 0 && (best < 0 || total.visits[move] > total.visits[best])) {
+                best = move;
+            }
+        }
+        int score = best < 0 ? 0 : (int) Math.round(
+                (total.halfPoints[best] / (double) total.visits[best] - 1) * MinimaxEngine.MAX_EVALUATION);
+        int[] principalVariation = total.principalVariation;
+        if (principalVariation.length == 0 || principalVariation[0] != best) {
+            principalVariation = best < 0 ? new int[0] : new int[] {best};
+        }
+        return new SearchResult(best, score, total.treeDepth, principalVariation, total.playoutDepth,
+                total.iterations, 0, 0, 0, System.nanoTime() - start);
+    }
+
+    /**
+     * One worker's share of a search: runs its iterations on the calling thread's tree and keeps
+     * the root statistics by move.
+     */
+    private final class Playouts extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final long[] visits;
+        final long[] halfPoints;
+        int[] principalVariation = new int[0];
+        long iterations;
+        int treeDepth;
+        int playoutDepth;
+
+        private Position position;
+        private long maxIterations;
+        private long deadline;
+        private AtomicBoolean stop;
+
+        Playouts(int cells) {
+            visits = new long[cells];
+            halfPoints = new long[cells];
+        }
+
+        void prepare(Position position, long maxIterations, long deadline, AtomicBoolean stop) {
+            this.position = position;
+            this.maxIterations = maxIterations;
+            this.deadline = deadline;
+            this.stop = stop;
+        }
+
+        void run(Position position, long maxIterations, long deadline, AtomicBoolean stop) {
+            prepare(position, maxIterations, deadline, stop);
+            compute();
+        }
+
+        @Override
+        protected void compute() {
+            Tree tree = trees.get();
+            tree.search(position, maxIterations, deadline, stop);
+            tree.collect(this);
+        }
+
+        void add(Playouts other) {
+            for (int move = 0; move < visits.length; ++move) {
+                visits[move] += other.visits[move];
+                halfPoints[move] += other.halfPoints[move];
+            }
+            iterations += other.iterations;
+            treeDepth = Math.max(treeDepth, other.treeDepth);
+            playoutDepth = Math.max(playoutDepth, other.playoutDepth);
+        }
+    }
+
+    private final class Tree {
+        private final int capacity;
+        // Index of the first child, or -1 while the node has not been expanded.
+        private final int[] firstChild;
+        private final byte[] childCount;
+        // The cell played to reach the node.
+        private final byte[] moves;
+        private final int[] visits;
+        // Two per win and one per draw for the side that played the node's move.
+        private final int[] halfPoints;
+        private final Board board = new Board(geometry, false);
+        private final int[] path = new int[geometry.cells + 1];
+        private long random;
+        private int size;
+        private int rootPieces;
+        private int treeDepth;
+        private int playoutDepth;
+        private long iterations;
+
+        Tree(int capacity, long seed) {
+            this.capacity = capacity;
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            moves = new byte[capacity];
+            visits = new int[capacity];
+            halfPoints = new int[capacity];
+            random = seed == 0 ? 1 : seed;
+        }
+
+        void search(Position position, long maxIterations, long deadline, AtomicBoolean stop) {
+            board.set(position);
+            rootPieces = board.pieces();
+            size = 1;
+            firstChild[0] = -1;
+            visits[0] = 0;
+            halfPoints[0] = 0;
+            treeDepth = 0;
+            playoutDepth = 0;
+            for (iterations = 0; iterations < maxIterations; ++iterations) {
+                if ((iterations & 63) == 63 && ((deadline != 0 && System.nanoTime() - deadline > 0)
+                        || (stop != null && stop.get()))) {
+                    break;
+                }
+                iterate();
+            }
+        }
+
+        private void iterate() {
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            while (firstChild[node] >= 0 && board.state() == Board.CONTINUE) {
+                node = select(node);
+                board.play(moves[node]);
+                path[length++] = node;
+            }
+            if (board.state() == Board.CONTINUE && (visits[node] > 0 || node == 0) && expand(node)) {
+                node = firstChild[node];
+                board.play(moves[node]);
+                path[length++] = node;
+            }
+            treeDepth = Math.max(treeDepth, length - 1);
+
+            playout();
+            int state = board.state();
+            playoutDepth = Math.max(playoutDepth, board.pieces() - rootPieces);
+            while (board.pieces() > rootPieces) {
+                board.undo();
+            }
+
+            // The node at path[i] was reached by the side to move at path[i - 1].
+            boolean moverIsPlayerTwo = board.playerTwoToMove();
+            for (int i = 1; i < length; ++i) {
+                int child = path[i];
+                ++visits[child];
+                if (state == Board.TIE) {
+                    halfPoints[child] += 1;
+                } else if ((state == Board.TWO_WINS) == moverIsPlayerTwo) {
+                    halfPoints[child] += 2;
+                }
+                moverIsPlayerTwo = !moverIsPlayerTwo;
+            }
+            ++visits[0];
+        }
+
+        private int select(int node) {
+            int first = firstChild[node];
+            int end = first + childCount[node];
+            double logVisits = Math.log(visits[node]);
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < end; ++child) {
+                int childVisits = visits[child];
+                if (childVisits == 0) {
+                    return child;
+                }
+                double value = halfPoints[child] / (2.0 * childVisits)
+                        + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        private boolean expand(int node) {
+            long empty = board.emptyCells();
+            int count = Long.bitCount(empty);
+            if (size + count > capacity) {
+                return false;
+            }
+            firstChild[node] = size;
+            childCount[node] = (byte) count;
+            for (; empty != 0; empty &= empty - 1) {
+                moves[size] = (byte) Long.numberOfTrailingZeros(empty);
+                firstChild[size] = -1;
+                visits[size] = 0;
+                halfPoints[size] = 0;
+                ++size;
+            }
+            return true;
+        }
+
+        private void playout() {
+            while (board.state() == Board.CONTINUE) {
+                boolean playerTwoToMove = board.playerTwoToMove();
+                long wins = board.threats(playerTwoToMove);
+                if (wins != 0) {
+                    board.play(Long.numberOfTrailingZeros(wins));
+                    continue;
+                }
+                long blocks = board.threats(!playerTwoToMove);
+                board.play(randomCell(blocks != 0 ? blocks : board.emptyCells()));
+            }
+        }
+
+        private int randomCell(long cells) {
+            // xorshift64*
+            random ^= random >>> 12;
+            random ^= random << 25;
+            random ^= random >>> 27;
+            long bits = (random * 0x2545F4914F6CDD1DL) >>> 32;
+            for (int skip = (int) ((bits * Long.bitCount(cells)) >>> 32); skip > 0; --skip) {
+                cells &= cells - 1;
+            }
+            return Long.numberOfTrailingZeros(cells);
+        }
+
+        void collect(Playouts playouts) {
+            int first = firstChild[0];
+            if (first >= 0) {
+                for (int child = first; child < first + childCount[0]; ++child) {
+                    playouts.visits[moves[child]] += visits[child];
+                    playouts.halfPoints[moves[child]] += halfPoints[child];
+                }
+            }
+            playouts.iterations = iterations;
+            playouts.treeDepth = treeDepth;
+            playouts.playoutDepth = playoutDepth;
+
+            int length = 0;
+            int[] line = new int[treeDepth];
+            for (int node = 0; firstChild[node] >= 0 && length < line.length; ) {
+                int best = -1;
+                for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; ++child) {
+                    if (best < 0 || visits[child] > visits[best]) {
+                        best = child;
+                    }
+                }
+                if (visits[best] == 0) {
+                    break;
+                }
+                line[length++] = moves[best];
+                node = best;
+            }
+            playouts.principalVariation = Arrays.copyOf(line, length);
+        }
+    }
+}
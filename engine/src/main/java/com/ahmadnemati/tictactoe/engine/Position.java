@@ -0,0 +1,91 @@
+package com.ahmadnemati.tictactoe.engine;
+
+/**
+ * Immutable snapshot of a board: each player's marks as a mask over the geometry's cells and the
+ * side to move.
+ */
+public final class Position {
+
+    public final BoardGeometry geometry;
+    public final long playerOneMask;
+    public final long playerTwoMask;
+    public final boolean playerTwoToMove;
+
+    public Position(BoardGeometry geometry, long playerOneMask, long playerTwoMask, boolean playerTwoToMove) {
+        if ((playerOneMask & playerTwoMask) != 0 || ((playerOneMask | playerTwoMask) & ~geometry.fullMask) != 0) {
+            throw new IllegalArgumentException("Overlapping or out of range marks");
+        }
+        this.geometry = geometry;
+        this.playerOneMask = playerOneMask;
+        this.playerTwoMask = playerTwoMask;
+        this.playerTwoToMove = playerTwoToMove;
+    }
+
+    public static Position empty(BoardGeometry geometry, boolean playerTwoToMove) {
+        return new Position(geometry, 0, 0, playerTwoToMove);
+    }
+
+    public long ownMask() {
+        return playerTwoToMove ? playerTwoMask : playerOneMask;
+    }
+
+    public long opponentMask() {
+        return playerTwoToMove ? playerOneMask : playerTwoMask;
+    }
+
+    public long emptyCells() {
+        return ~(playerOneMask | playerTwoMask) & geometry.fullMask;
+    }
+
+    public int pieces() {
+        return Long.bitCount(playerOneMask | playerTwoMask);
+    }
+
+    public boolean isOver() {
+        return emptyCells() == 0 || geometry.hasLine(playerOneMask) || geometry.hasLine(playerTwoMask);
+    }
+
+    public Position play(int cell) {
+        long bit = 1L << cell;
+        if ((emptyCells() & bit) == 0) {
+            throw new IllegalArgumentException("Cell " + cell + " is not empty");
+        }
+        return playerTwoToMove
+                ? new Position(geometry, playerOneMask, playerTwoMask | bit, false)
+                : new Position(geometry, playerOneMask | bit, playerTwoMask, true);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        Position other = (Position) o;
+        return geometry == other.geometry
+                && playerOneMask == other.playerOneMask
+                && playerTwoMask == other.playerTwoMask
+                && playerTwoToMove == other.playerTwoToMove;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = playerOneMask * 31 + playerTwoMask;
+        return (int) (h ^ (h >>> 32)) * 2 + (playerTwoToMove ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Position{");
+        for (int i = 0; i < geometry.cells; ++i) {
+            if (i > 0 && i % geometry.width == 0) {
+                builder.append('/');
+            }
+            long bit = 1L << i;
+            builder.append((playerOneMask & bit) != 0 ? 'X' : (playerTwoMask & bit) != 0 ? 'O' : '-');
+        }
+        return builder.append(playerTwoToMove ? ", O to move}" : ", X to move}").toString();
+    }
+}
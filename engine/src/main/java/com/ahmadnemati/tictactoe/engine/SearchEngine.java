@@ -0,0 +1,10 @@
+package com.ahmadnemati.tictactoe.engine;
+
+/**
+ * Chooses a move for the side to move in a {@link Position}. Implementations keep no per-search
+ * state outside the call, so one engine can serve several searches at once.
+ */
+public interface SearchEngine {
+
+    SearchResult search(Position position, SearchLimits limits);
+}
@@ -0,0 +1,59 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * How far a search may go: a maximum depth in plies, a node budget, and a time budget, where a
+ * budget of 0 means no time limit, and optionally a flag that stops the search when another
+ * thread sets it. Monte Carlo search counts iterations as nodes and has no depth limit.
+ */
+public final class SearchLimits {
+
+    public static final SearchLimits NONE = new SearchLimits(Integer.MAX_VALUE, 0);
+
+    public final int maxDepth;
+    public final long maxNodes;
+    public final long timeBudgetNanos;
+    /** Null when the search cannot be stopped early. */
+    public final AtomicBoolean stop;
+
+    public SearchLimits(int maxDepth, long timeBudgetNanos) {
+        this(maxDepth, Long.MAX_VALUE, timeBudgetNanos, null);
+    }
+
+    public SearchLimits(int maxDepth, long maxNodes, long timeBudgetNanos, AtomicBoolean stop) {
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.timeBudgetNanos = timeBudgetNanos;
+        this.stop = stop;
+    }
+
+    public static SearchLimits depth(int maxDepth) {
+        return new SearchLimits(maxDepth, 0);
+    }
+
+    public static SearchLimits time(long budget, TimeUnit unit) {
+        return new SearchLimits(Integer.MAX_VALUE, unit.toNanos(budget));
+    }
+
+    /**
+     * A node budget. Like the time budget, minimax only enforces it once the first ply completes,
+     * and each root-split worker counts its own nodes against it.
+     */
+    public static SearchLimits nodes(long maxNodes) {
+        return new SearchLimits(Integer.MAX_VALUE, maxNodes, 0, null);
+    }
+
+    public boolean hasBudget() {
+        return maxNodes != Long.MAX_VALUE || timeBudgetNanos > 0;
+    }
+
+    /**
+     * The same limits, stopping once {@code stop} is set. A stopped search checks the flag as
+     * often as it checks the clock, and may return before its first ply completes, with move -1.
+     */
+    public SearchLimits stopWhen(AtomicBoolean stop) {
+        return new SearchLimits(maxDepth, maxNodes, timeBudgetNanos, stop);
+    }
+}
@@ -0,0 +1,108 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of one {@link SearchEngine#search}. The move is -1 when the position has no moves left.
+ */
+public final class SearchResult {
+
+    private final int move;
+    private final int score;
+    private final int depth;
+    private final int[] principalVariation;
+    private final int selectiveDepth;
+    private final long nodes;
+    private final long cutoffs;
+    private final long tableHits;
+    private final long tableMisses;
+    private final long elapsedNanos;
+
+    public SearchResult(int move, int score, int depth, int[] principalVariation, long nodes, long elapsedNanos) {
+        this(move, score, depth, principalVariation, depth, nodes, 0, 0, 0, elapsedNanos);
+    }
+
+    public SearchResult(int move, int score, int depth, int[] principalVariation, int selectiveDepth,
+                        long nodes, long cutoffs, long tableHits, long tableMisses, long elapsedNanos) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.principalVariation = principalVariation;
+        this.selectiveDepth = selectiveDepth;
+        this.nodes = nodes;
+        this.cutoffs = cutoffs;
+        this.tableHits = tableHits;
+        this.tableMisses = tableMisses;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    /**
+     * Score for the side to move; see {@link MinimaxEngine#WIN_SCORE} for the scale.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Depth in plies of the last completed iteration.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Deepest ply reached below the root, counting forced moves searched past the nominal depth.
+     */
+    public int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Nodes whose move loop stopped early on a beta cutoff.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Table probes that found the position, whether or not the entry was deep enough to use.
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getTableMisses() {
+        return tableMisses;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{move=" + move
+                + ", score=" + score
+                + ", depth=" + depth
+                + ", pv=" + Arrays.toString(principalVariation)
+                + ", selectiveDepth=" + selectiveDepth
+                + ", nodes=" + nodes
+                + ", cutoffs=" + cutoffs
+                + ", tableHits=" + tableHits
+                + ", tableMisses=" + tableMisses
+                + ", elapsedNanos=" + elapsedNanos
+                + "}";
+    }
+}
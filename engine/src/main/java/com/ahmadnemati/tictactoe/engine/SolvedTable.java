@@ -0,0 +1,79 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Read-only view of the solved-position table generated at build time by
+ * {@link SolvedTableGenerator}.
+ *
+ * <p>The file is a 12-byte header (magic, version, entry count) followed by one big-endian short
+ * per {@link #index} of every standard 3x3 position with either side to move. An entry packs
+ * {@code (score + 16) << 9 | bestMoves}, where {@code bestMoves} has a bit for every square that
+ * reaches the score and the score is that of the side to move, {@code 10 - marks at the end}
+ * for a win, its negation for a loss and 0 for a draw. Positions that are over or cannot occur hold 0.
+ */
+public final class SolvedTable {
+
+    public static final String ASSET_NAME = "solved_positions.bin";
+
+    static final int MAGIC = 0x54545453; // "TTTS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int POSITIONS = 19683; // 3^9
+    static final int ENTRY_COUNT = 2 * POSITIONS;
+
+    // TERNARY[mask] is the base-3 number with a 1 digit for every set bit of mask.
+    private static final int[] TERNARY = new int[1 << 9];
+
+    static {
+        for (int mask = 1; mask < TERNARY.length; ++mask) {
+            int lowest = Integer.numberOfTrailingZeros(mask);
+            int power = 1;
+            for (int i = 0; i < lowest; ++i) {
+                power *= 3;
+            }
+            TERNARY[mask] = TERNARY[mask & (mask - 1)] + power;
+        }
+    }
+
+    private final ShortBuffer entries;
+
+    private SolvedTable(ShortBuffer entries) {
+        this.entries = entries;
+    }
+
+    public static SolvedTable wrap(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() != HEADER_SIZE + 2 * ENTRY_COUNT
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != ENTRY_COUNT) {
+            throw new IOException("Not a solved-position table");
+        }
+        buffer.position(HEADER_SIZE);
+        return new SolvedTable(buffer.slice().asShortBuffer());
+    }
+
+    static int index(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        int code = TERNARY[playerOneMask] + 2 * TERNARY[playerTwoMask];
+        return playerTwoToMove ? code + POSITIONS : code;
+    }
+
+    static short entry(int score, int bestMoves) {
+        return (short) ((score + 16) << 9 | bestMoves);
+    }
+
+    /**
+     * Squares that play the position perfectly, or 0 if it is over or cannot occur.
+     */
+    public int bestMoves(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        return entries.get(index(playerOneMask, playerTwoMask, playerTwoToMove)) & 0x1FF;
+    }
+
+    public int score(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        return (entries.get(index(playerOneMask, playerTwoMask, playerTwoToMove)) >> 9) - 16;
+    }
+}
@@ -0,0 +1,146 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Build-time tool that solves every reachable position and writes the {@link SolvedTable} asset.
+ * The written file is read back and checked against a second, independent search.
+ */
+public final class SolvedTableGenerator {
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.STANDARD;
+    private static final int FULL_MASK = (int) GEOMETRY.fullMask;
+
+    private final SearchEngine engine = newEngine();
+    private final short[] entries = new short[SolvedTable.ENTRY_COUNT];
+    private int solved;
+
+    private SolvedTableGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: SolvedTableGenerator <output file>");
+        }
+        File output = new File(args[0]);
+        File parent = output.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        SolvedTableGenerator generator = new SolvedTableGenerator();
+        generator.solve(0, 0, false);
+        generator.solve(0, 0, true);
+        generator.write(output);
+        verify(output);
+        System.out.println("Solved " + generator.solved + " positions into " + output);
+    }
+
+    private void solve(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        int index = SolvedTable.index(playerOneMask, playerTwoMask, playerTwoToMove);
+        int empty = ~(playerOneMask | playerTwoMask) & FULL_MASK;
+        if (entries[index] != 0 || empty == 0) {
+            return;
+        }
+
+        int bestScore = Integer.MIN_VALUE;
+        int bestMoves = 0;
+        for (int remaining = empty; remaining != 0; remaining &= remaining - 1) {
+            int square = remaining & -remaining;
+            int nextOne = playerTwoToMove ? playerOneMask : playerOneMask | square;
+            int nextTwo = playerTwoToMove ? playerTwoMask | square : playerTwoMask;
+            int score = -childScore(nextOne, nextTwo, !playerTwoToMove);
+            if (score > bestScore) {
+                bestScore = score;
+                bestMoves = square;
+            } else if (score == bestScore) {
+                bestMoves |= square;
+            }
+            if (!GEOMETRY.hasLine(playerTwoToMove ? nextTwo : nextOne)) {
+                solve(nextOne, nextTwo, !playerTwoToMove);
+            }
+        }
+        entries[index] = SolvedTable.entry(bestScore, bestMoves);
+        ++solved;
+    }
+
+    private int childScore(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        if (GEOMETRY.hasLine(playerTwoToMove ? playerOneMask : playerTwoMask)) {
+            return Integer.bitCount(playerOneMask | playerTwoMask) - 10;
+        }
+        return tableScore(engine.search(position(playerOneMask, playerTwoMask, playerTwoToMove),
+                SearchLimits.NONE).getScore());
+    }
+
+    private static SearchEngine newEngine() {
+        return new MinimaxEngine(GEOMETRY, new TranspositionTable(GEOMETRY, 16));
+    }
+
+    private static Position position(int playerOneMask, int playerTwoMask, boolean playerTwoToMove) {
+        return new Position(GEOMETRY, playerOneMask, playerTwoMask, playerTwoToMove);
+    }
+
+    /**
+     * Converts a search score, {@code MinimaxEngine.WIN_SCORE - marks} for a win, to the table's
+     * {@code 10 - marks}.
+     */
+    private static int tableScore(int score) {
+        if (score == 0) {
+            return 0;
+        }
+        int marks = MinimaxEngine.WIN_SCORE - Math.abs(score);
+        return score > 0 ? 10 - marks : marks - 10;
+    }
+
+    private void write(File output) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SolvedTable.HEADER_SIZE + 2 * entries.length)
+                .order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(SolvedTable.MAGIC).putInt(SolvedTable.VERSION).putInt(entries.length);
+        buffer.asShortBuffer().put(entries);
+
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            file.setLength(0);
+            file.write(buffer.array());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void verify(File output) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(output, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            SolvedTable table = SolvedTable.wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            SearchEngine verifier = newEngine();
+            for (int one = 0; one <= FULL_MASK; ++one) {
+                for (int two = 0; two <= FULL_MASK; ++two) {
+                    if ((one & two) != 0 || GEOMETRY.hasLine(one) || GEOMETRY.hasLine(two)
+                            || Math.abs(Integer.bitCount(one) - Integer.bitCount(two)) > 1
+                            || (one | two) == FULL_MASK) {
+                        continue;
+                    }
+                    boolean[] sides = Integer.bitCount(one) == Integer.bitCount(two)
+                            ? new boolean[] {false, true}
+                            : new boolean[] {Integer.bitCount(one) > Integer.bitCount(two)};
+                    for (boolean playerTwoToMove : sides) {
+                        int bestMoves = table.bestMoves(one, two, playerTwoToMove);
+                        SearchResult result = verifier.search(position(one, two, playerTwoToMove), SearchLimits.NONE);
+                        if (table.score(one, two, playerTwoToMove) != tableScore(result.getScore())
+                                || (bestMoves & (1 << result.getMove())) == 0) {
+                            throw new IllegalStateException("Table disagrees with search at "
+                                    + Integer.toBinaryString(one) + "/" + Integer.toBinaryString(two));
+                        }
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
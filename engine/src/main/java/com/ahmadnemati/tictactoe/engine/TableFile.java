@@ -0,0 +1,121 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps a {@link TranspositionTable} in a memory-mapped file, so that its entries survive
+ * restarts. Opening loads the stored slots into the table; {@link #flush()} writes back only the
+ * slots changed since the last flush.
+ *
+ * <p>The file is a 24-byte header (magic, version, width, height, k, table size bits) followed by
+ * every slot's key and then every slot's entry, big-endian, in the table's own layout. A file
+ * whose header does not match the table is discarded and started afresh, so {@link #VERSION} must
+ * change whenever the hashing or the entry layout does. Slots torn by a crash mid-flush fail the
+ * table's key check and read as empty.
+ */
+public final class TableFile implements Closeable {
+
+    static final int MAGIC = 0x54545454; // "TTTT"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 24;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final LongBuffer keys;
+    private final IntBuffer entries;
+    private final TranspositionTable table;
+
+    private TableFile(RandomAccessFile file, MappedByteBuffer buffer, TranspositionTable table) {
+        this.file = file;
+        this.buffer = buffer;
+        this.table = table;
+        int capacity = table.capacity();
+        buffer.position(HEADER_SIZE);
+        keys = buffer.slice().asLongBuffer();
+        buffer.position(HEADER_SIZE + 8 * capacity);
+        entries = buffer.slice().asIntBuffer();
+        buffer.position(0);
+    }
+
+    /**
+     * A file name that tells tables for different board geometries apart.
+     */
+    public static String fileName(BoardGeometry geometry) {
+        return "table_" + geometry.width + "x" + geometry.height + "k" + geometry.k + ".bin";
+    }
+
+    /**
+     * Opens or creates {@code path} for {@code table} and loads what it holds into the table.
+     */
+    public static TableFile open(File path, TranspositionTable table) throws IOException {
+        long size = HEADER_SIZE + 12L * table.capacity();
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            boolean valid = file.length() == size && hasHeader(file, table);
+            if (!valid) {
+                file.setLength(0);
+                file.setLength(size);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            TableFile tableFile = new TableFile(file, buffer, table);
+            if (valid) {
+                table.load(tableFile.keys, tableFile.entries);
+            } else {
+                writeHeader(buffer, table);
+                // Everything the table holds so far belongs in the new file.
+                tableFile.flush();
+            }
+            return tableFile;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the slots changed since the last flush and forces them to storage. Safe to call
+     * while searches write to the table.
+     */
+    public synchronized int flush() {
+        int written = table.flushDirty(keys, entries);
+        if (written > 0) {
+            buffer.force();
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        file.close();
+    }
+
+    private static boolean hasHeader(RandomAccessFile file, TranspositionTable table) throws IOException {
+        BoardGeometry geometry = table.geometry();
+        file.seek(0);
+        return file.readInt() == MAGIC
+                && file.readInt() == VERSION
+                && file.readInt() == geometry.width
+                && file.readInt() == geometry.height
+                && file.readInt() == geometry.k
+                && file.readInt() == table.sizeBits();
+    }
+
+    private static void writeHeader(ByteBuffer buffer, TranspositionTable table) {
+        BoardGeometry geometry = table.geometry();
+        buffer.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, geometry.width)
+                .putInt(12, geometry.height)
+                .putInt(16, geometry.k)
+                .putInt(20, table.sizeBits());
+    }
+}
@@ -0,0 +1,243 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a tablebase written by {@link TablebaseGenerator}: the perfect-play value of
+ * every position of an m,n,k game, probed in constant time. As a {@link SearchEngine} it answers
+ * any position instantly and ignores the limits.
+ *
+ * <p>Positions are stored from the side to move, which has {@code floor(n / 2)} of the {@code n}
+ * marks, so one table serves either starting player. Layer {@code n} ranks the occupied cells and
+ * then the opponent's cells among them in the combinatorial number system, one byte per position:
+ * 0 for a draw, {@code d} for a win in {@code d} plies, {@code -(d + 1)} for a loss in {@code d}
+ * plies (-1 when the opponent has already won), and {@link #INVALID} when the side to move already
+ * has a line, which no game reaches.
+ *
+ * <p>The file is a header (magic, version, width, height and k as ints, then the offset of every
+ * layer as a long) followed by the layers from 0 marks to full, big-endian.
+ */
+public final class Tablebase implements SearchEngine {
+
+    static final int MAGIC = 0x54545442; // "TTTB"
+    static final int VERSION = 1;
+    static final byte DRAW = 0;
+    static final byte INVALID = Byte.MIN_VALUE;
+
+    // BINOMIAL[n][r] is n choose r.
+    static final long[][] BINOMIAL = new long[BoardGeometry.MAX_CELLS + 1][BoardGeometry.MAX_CELLS + 1];
+
+    static {
+        for (int n = 0; n <= BoardGeometry.MAX_CELLS; ++n) {
+            BINOMIAL[n][0] = 1;
+            for (int r = 1; r <= n; ++r) {
+                BINOMIAL[n][r] = BINOMIAL[n - 1][r - 1] + BINOMIAL[n - 1][r];
+            }
+        }
+    }
+
+    private final BoardGeometry geometry;
+    private final ByteBuffer[] layers;
+
+    private Tablebase(BoardGeometry geometry, ByteBuffer[] layers) {
+        this.geometry = geometry;
+        this.layers = layers;
+    }
+
+    /**
+     * A file name that tells tablebases for different board geometries apart.
+     */
+    public static String fileName(BoardGeometry geometry) {
+        return "tablebase_" + geometry.width + "x" + geometry.height + "k" + geometry.k + ".bin";
+    }
+
+    /**
+     * Maps every layer of the file separately, so the file as a whole may exceed 2GB.
+     */
+    public static Tablebase open(File path, BoardGeometry geometry) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            byte[] header = new byte[(int) Math.min(headerSize(geometry), channel.size())];
+            file.readFully(header);
+            long[] offsets = offsets(ByteBuffer.wrap(header), geometry, channel.size());
+            ByteBuffer[] layers = new ByteBuffer[geometry.cells + 1];
+            for (int n = 0; n <= geometry.cells; ++n) {
+                layers[n] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[n], layerSize(geometry, n));
+            }
+            return new Tablebase(geometry, layers);
+        } finally {
+            file.close();
+        }
+    }
+
+    public static Tablebase wrap(ByteBuffer buffer, BoardGeometry geometry) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        long[] offsets = offsets(buffer, geometry, buffer.limit());
+        ByteBuffer[] layers = new ByteBuffer[geometry.cells + 1];
+        for (int n = 0; n <= geometry.cells; ++n) {
+            ByteBuffer layer = buffer.duplicate();
+            layer.position((int) offsets[n]);
+            layer.limit((int) (offsets[n] + layerSize(geometry, n)));
+            layers[n] = layer.slice();
+        }
+        return new Tablebase(geometry, layers);
+    }
+
+    private static long[] offsets(ByteBuffer header, BoardGeometry geometry, long fileSize) throws IOException {
+        if (header.limit() < headerSize(geometry)
+                || header.getInt(0) != MAGIC
+                || header.getInt(4) != VERSION
+                || header.getInt(8) != geometry.width
+                || header.getInt(12) != geometry.height
+                || header.getInt(16) != geometry.k) {
+            throw new IOException("Not a tablebase for a " + geometry + " board");
+        }
+        long[] offsets = new long[geometry.cells + 1];
+        for (int n = 0; n <= geometry.cells; ++n) {
+            offsets[n] = header.getLong(20 + 8 * n);
+            if (offsets[n] < headerSize(geometry) || offsets[n] + layerSize(geometry, n) > fileSize) {
+                throw new IOException("Tablebase layer " + n + " out of range");
+            }
+        }
+        return offsets;
+    }
+
+    static int headerSize(BoardGeometry geometry) {
+        return 20 + 8 * (geometry.cells + 1);
+    }
+
+    /**
+     * Positions with {@code n} marks: where the marks are, times which of them are the opponent's.
+     */
+    static long layerSize(BoardGeometry geometry, int n) {
+        return BINOMIAL[geometry.cells][n] * BINOMIAL[n][n - n / 2];
+    }
+
+    /**
+     * The position's rank within its layer; the side to move must hold {@code floor(n / 2)} marks.
+     */
+    static long index(long ownMask, long opponentMask) {
+        long occupied = ownMask | opponentMask;
+        int n = Long.bitCount(occupied);
+        long occupiedRank = 0;
+        long opponentRank = 0;
+        int i = 0;
+        int opponents = 0;
+        for (long remaining = occupied; remaining != 0; remaining &= remaining - 1, ++i) {
+            long bit = remaining & -remaining;
+            occupiedRank += BINOMIAL[Long.numberOfTrailingZeros(bit)][i + 1];
+            if ((opponentMask & bit) != 0) {
+                opponentRank += BINOMIAL[i][++opponents];
+            }
+        }
+        return occupiedRank * BINOMIAL[n][n - n / 2] + opponentRank;
+    }
+
+    /**
+     * The mask whose set bits have rank {@code rank} among masks of {@code count} bits below
+     * {@code 1 << limit}.
+     */
+    static long unrank(long rank, int count, int limit) {
+        long mask = 0;
+        for (int r = count, c = limit - 1; r > 0; --r, --c) {
+            while (BINOMIAL[c][r] > rank) {
+                --c;
+            }
+            rank -= BINOMIAL[c][r];
+            mask |= 1L << c;
+        }
+        return mask;
+    }
+
+    /**
+     * Spreads the low bits of {@code selection} over the set bits of {@code mask}, in order.
+     */
+    static long deposit(long selection, long mask) {
+        long result = 0;
+        for (long remaining = mask; remaining != 0 && selection != 0; remaining &= remaining - 1, selection >>>= 1) {
+            if ((selection & 1) != 0) {
+                result |= remaining & -remaining;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orders stored values from the side to move's point of view: faster wins first, then draws,
+     * then slower losses.
+     */
+    static int preference(int value) {
+        if (value > 0) {
+            return 1000 - value;
+        }
+        return value == 0 ? 0 : -1001 - value;
+    }
+
+    /**
+     * The value of a position from the side to move, who must hold {@code floor(n / 2)} marks.
+     */
+    int value(long ownMask, long opponentMask) {
+        int n = Long.bitCount(ownMask | opponentMask);
+        return layers[n].get((int) index(ownMask, opponentMask));
+    }
+
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        if (position.geometry != geometry) {
+            throw new IllegalArgumentException("Position is not on a " + geometry + " board");
+        }
+        long start = System.nanoTime();
+        long own = position.ownMask();
+        long opponent = position.opponentMask();
+        int pieces = position.pieces();
+        if (Long.bitCount(own) != pieces / 2) {
+            throw new IllegalArgumentException("Position cannot arise from alternating play: " + position);
+        }
+        int bestMove = -1;
+        int bestValue = 0;
+        long nodes = 0;
+        if (!position.isOver()) {
+            for (long remaining = position.emptyCells(); remaining != 0; remaining &= remaining - 1) {
+                long bit = remaining & -remaining;
+                int value;
+                if (geometry.hasLine(own | bit)) {
+                    value = 1;
+                } else {
+                    value = childValue(value(opponent, own | bit));
+                }
+                ++nodes;
+                if (bestMove < 0 || preference(value) > preference(bestValue)) {
+                    bestMove = Long.numberOfTrailingZeros(bit);
+                    bestValue = value;
+                }
+            }
+        }
+        int score = 0;
+        if (bestValue > 0) {
+            score = MinimaxEngine.WIN_SCORE - (pieces + bestValue);
+        } else if (bestValue < 0) {
+            score = -(MinimaxEngine.WIN_SCORE - (pieces + (-bestValue - 1)));
+        }
+        int[] principalVariation = bestMove < 0 ? new int[0] : new int[] {bestMove};
+        return new SearchResult(bestMove, score, geometry.cells - pieces, principalVariation, nodes,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Converts the value of a child, from the opponent's side, into the value of the move that
+     * reaches it.
+     */
+    static int childValue(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        // The opponent loses in d plies, so the mover wins in d + 1; and the other way round.
+        return value < 0 ? -value : -(value + 2);
+    }
+}
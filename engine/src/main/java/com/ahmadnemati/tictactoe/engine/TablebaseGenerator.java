@@ -0,0 +1,275 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Offline tool that solves every position of an m,n,k game by retrograde analysis and writes a
+ * {@link Tablebase}. Layers are solved from the full board back to the empty one, each from the
+ * layer after it, with the positions of a layer split across all cores.
+ *
+ * <p>The layer being solved is kept in one direct buffer while it fits the memory budget and is
+ * otherwise written straight into the memory-mapped output, leaving the operating system to page
+ * it to disk; the layer it reads from is always mapped. A single layer is limited to 2^31
+ * positions, which every board up to 4x5 stays within.
+ */
+public final class TablebaseGenerator {
+
+    private static final String USAGE = "Usage: TablebaseGenerator <width> <height> <k> <output file> [memory bytes]";
+    private static final long DEFAULT_MEMORY_BYTES = 256L << 20;
+    // Positions solved by one task before it stops splitting.
+    private static final long TASK_POSITIONS = 1 << 16;
+    private static final int VERIFIED_PER_LAYER = 100;
+    // Layers with more empty cells than this are too slow to check by search.
+    private static final int MAX_VERIFIED_DEPTH = 10;
+
+    private final BoardGeometry geometry;
+    private final ForkJoinPool pool;
+    private final PrintStream log;
+
+    TablebaseGenerator(BoardGeometry geometry, ForkJoinPool pool, PrintStream log) {
+        this.geometry = geometry;
+        this.pool = pool;
+        this.log = log;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 && args.length != 5) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        BoardGeometry geometry = new BoardGeometry(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]));
+        File output = new File(args[3]);
+        long memoryBytes = args.length == 5 ? Long.parseLong(args[4]) : DEFAULT_MEMORY_BYTES;
+        File parent = output.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            long start = System.nanoTime();
+            new TablebaseGenerator(geometry, pool, System.out).generate(output, memoryBytes);
+            verify(output, geometry, System.out);
+            System.out.println("Wrote " + output + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Solves every layer into {@code output}, buffering layers of up to {@code memoryBytes} in
+     * memory.
+     */
+    void generate(File output, long memoryBytes) throws IOException {
+        int cells = geometry.cells;
+        long[] offsets = new long[cells + 2];
+        offsets[0] = Tablebase.headerSize(geometry);
+        long largestLayer = 0;
+        for (int n = 0; n <= cells; ++n) {
+            long size = Tablebase.layerSize(geometry, n);
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Layer " + n + " of a " + geometry + " board has "
+                        + size + " positions, more than a layer can hold");
+            }
+            offsets[n + 1] = offsets[n] + size;
+            largestLayer = Math.max(largestLayer, size);
+        }
+        ByteBuffer memory = ByteBuffer.allocateDirect((int) Math.min(largestLayer, Math.max(0, memoryBytes)));
+
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(offsets[cells + 1]);
+            file.writeInt(Tablebase.MAGIC);
+            file.writeInt(Tablebase.VERSION);
+            file.writeInt(geometry.width);
+            file.writeInt(geometry.height);
+            file.writeInt(geometry.k);
+            for (int n = 0; n <= cells; ++n) {
+                file.writeLong(offsets[n]);
+            }
+
+            FileChannel channel = file.getChannel();
+            for (int n = cells; n >= 0; --n) {
+                long start = System.nanoTime();
+                int size = (int) Tablebase.layerSize(geometry, n);
+                ByteBuffer next = n == cells ? null
+                        : channel.map(FileChannel.MapMode.READ_ONLY, offsets[n + 1], offsets[n + 2] - offsets[n + 1]);
+                boolean spilled = size > memory.capacity();
+                ByteBuffer values;
+                if (spilled) {
+                    values = channel.map(FileChannel.MapMode.READ_WRITE, offsets[n], size);
+                } else {
+                    memory.clear().limit(size);
+                    values = memory.slice();
+                }
+
+                // Wins, draws and losses for the side to move.
+                AtomicLongArray counts = new AtomicLongArray(3);
+                pool.invoke(new Layer(n, 0, Tablebase.BINOMIAL[cells][n], next, values, counts));
+                if (spilled) {
+                    ((MappedByteBuffer) values).force();
+                } else {
+                    while (values.hasRemaining()) {
+                        channel.write(values, offsets[n] + values.position());
+                    }
+                }
+                log.printf("Layer %d: %d positions, %d wins, %d draws, %d losses%s in %d ms%n", n, size,
+                        counts.get(0), counts.get(1), counts.get(2), spilled ? " (spilled to disk)" : "",
+                        (System.nanoTime() - start) / 1000000);
+            }
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Solves the positions of layer {@code n} whose occupied cells rank from {@code from} up to
+     * {@code to}.
+     */
+    private final class Layer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int n;
+        final long from;
+        final long to;
+        final ByteBuffer next;
+        final ByteBuffer values;
+        final AtomicLongArray counts;
+
+        Layer(int n, long from, long to, ByteBuffer next, ByteBuffer values, AtomicLongArray counts) {
+            this.n = n;
+            this.from = from;
+            this.to = to;
+            this.next = next;
+            this.values = values;
+            this.counts = counts;
+        }
+
+        @Override
+        protected void compute() {
+            int opponents = n - n / 2;
+            long arrangements = Tablebase.BINOMIAL[n][opponents];
+            if ((to - from) * arrangements > TASK_POSITIONS && to - from > 1) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Layer(n, from, middle, next, values, counts),
+                        new Layer(n, middle, to, next, values, counts));
+                return;
+            }
+            long wins = 0;
+            long draws = 0;
+            long losses = 0;
+            for (long rank = from; rank < to; ++rank) {
+                long occupied = Tablebase.unrank(rank, n, geometry.cells);
+                long selection = (1L << opponents) - 1;
+                for (long r = 0; r < arrangements; ++r) {
+                    long opponentMask = Tablebase.deposit(selection, occupied);
+                    byte value = solve(occupied ^ opponentMask, opponentMask, next);
+                    values.put((int) (rank * arrangements + r), value);
+                    if (value > 0) {
+                        ++wins;
+                    } else if (value == Tablebase.DRAW) {
+                        ++draws;
+                    } else if (value != Tablebase.INVALID) {
+                        ++losses;
+                    }
+                    // The next selection of the same size in increasing order.
+                    long lowest = selection & -selection;
+                    long ripple = selection + lowest;
+                    selection = lowest == 0 ? 0 : (((ripple ^ selection) >>> 2) / lowest) | ripple;
+                }
+            }
+            counts.addAndGet(0, wins);
+            counts.addAndGet(1, draws);
+            counts.addAndGet(2, losses);
+        }
+    }
+
+    /**
+     * The value of a position from the side to move, given the solved layer after it.
+     */
+    private byte solve(long ownMask, long opponentMask, ByteBuffer next) {
+        if (geometry.hasLine(ownMask)) {
+            return Tablebase.INVALID;
+        }
+        if (geometry.hasLine(opponentMask)) {
+            return -1;
+        }
+        long empty = ~(ownMask | opponentMask) & geometry.fullMask;
+        if (empty == 0) {
+            return Tablebase.DRAW;
+        }
+        int best = Tablebase.INVALID;
+        for (long remaining = empty; remaining != 0; remaining &= remaining - 1) {
+            long bit = remaining & -remaining;
+            if (completesLine(ownMask | bit, Long.numberOfTrailingZeros(bit))) {
+                return 1;
+            }
+            int value = Tablebase.childValue(next.get((int) Tablebase.index(opponentMask, ownMask | bit)));
+            if (best == Tablebase.INVALID || Tablebase.preference(value) > Tablebase.preference(best)) {
+                best = value;
+            }
+        }
+        return (byte) best;
+    }
+
+    private boolean completesLine(long mask, int cell) {
+        for (int line : geometry.lineIndicesThrough[cell]) {
+            if ((mask & geometry.lines[line]) == geometry.lines[line]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the written file back and checks the outcome and best move of positions from every
+     * layer shallow enough to search against an independent {@link MinimaxEngine}.
+     */
+    static void verify(File output, BoardGeometry geometry, PrintStream log) throws IOException {
+        Tablebase tablebase = Tablebase.open(output, geometry);
+        SearchEngine verifier = new MinimaxEngine(geometry, new TranspositionTable(geometry, 20));
+        Random random = new Random(geometry.cells);
+        int verified = 0;
+        for (int n = Math.max(0, geometry.cells - MAX_VERIFIED_DEPTH); n <= geometry.cells; ++n) {
+            int opponents = n - n / 2;
+            long arrangements = Tablebase.BINOMIAL[n][opponents];
+            long size = Tablebase.layerSize(geometry, n);
+            for (int i = 0; i < VERIFIED_PER_LAYER && i < size; ++i) {
+                long index = (long) (random.nextDouble() * size);
+                long occupied = Tablebase.unrank(index / arrangements, n, geometry.cells);
+                long opponentMask = Tablebase.deposit(
+                        Tablebase.unrank(index % arrangements, opponents, n), occupied);
+                // Values are stored for the side to move, so checking games player one started covers both.
+                boolean playerTwoToMove = n % 2 != 0;
+                long ownMask = occupied ^ opponentMask;
+                Position position = new Position(geometry, playerTwoToMove ? opponentMask : ownMask,
+                        playerTwoToMove ? ownMask : opponentMask, playerTwoToMove);
+                if (geometry.hasLine(ownMask) || position.isOver()) {
+                    continue;
+                }
+                // The search proves who wins but not always by the fastest line, so outcomes are compared.
+                int expected = Integer.signum(verifier.search(position, SearchLimits.NONE).getScore());
+                SearchResult result = tablebase.search(position, SearchLimits.NONE);
+                Position reply = position.play(result.getMove());
+                if (Integer.signum(result.getScore()) != expected || !reply.isOver()
+                        && -Integer.signum(verifier.search(reply, SearchLimits.NONE).getScore()) != expected) {
+                    throw new IllegalStateException("Tablebase disagrees with search at " + position);
+                }
+                ++verified;
+            }
+        }
+        log.println("Verified " + verified + " positions against search");
+    }
+}
@@ -0,0 +1,342 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless self-play: every pair of players meets for a number of games, alternating who starts,
+ * and the results, throughput and per-move latencies are printed when all games are done.
+ *
+ * <p>Each thread plays a fixed share of the games with players, search caches and random
+ * generators of its own, so threads share nothing until their results are summed.
+ *
+ * <p>A player is {@code random}, {@code minimax} or {@code mcts}, optionally followed by a limit:
+ * {@code minimax:d3} searches three plies, {@code minimax:20ms} twenty milliseconds and
+ * {@code mcts:5000n} five thousand iterations. Without a limit minimax searches to the end of the
+ * game and MCTS runs its default iterations.
+ */
+public final class Tournament {
+
+    private static final String USAGE = "Usage: Tournament [-board WxHxK] [-games N] [-threads N]"
+            + " [-cache BYTES] player player...";
+
+    private final BoardGeometry geometry;
+    private final List<String> players;
+    private final long gamesPerPair;
+    private final int threads;
+    private final long cacheBytes;
+    private final long seed;
+
+    public Tournament(BoardGeometry geometry, List<String> players, long gamesPerPair, int threads,
+                      long cacheBytes, long seed) {
+        if (players.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two players");
+        }
+        this.geometry = geometry;
+        this.players = new ArrayList<>(players);
+        this.gamesPerPair = gamesPerPair;
+        this.threads = threads;
+        this.cacheBytes = cacheBytes;
+        this.seed = seed;
+        // Fails early on a bad player spec rather than in every thread.
+        for (String player : players) {
+            newPlayer(player, new Random());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        long games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long cacheBytes = 4L << 20;
+        List<String> players = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            if (arg.equals("-board")) {
+                String[] size = args[++i].split("x");
+                if (size.length != 3) {
+                    throw new IllegalArgumentException(USAGE);
+                }
+                geometry = new BoardGeometry(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                        Integer.parseInt(size[2]));
+            } else if (arg.equals("-games")) {
+                games = Long.parseLong(args[++i]);
+            } else if (arg.equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-cache")) {
+                cacheBytes = Long.parseLong(args[++i]);
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException(USAGE);
+            } else {
+                players.add(arg);
+            }
+        }
+        if (players.size() < 2) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        new Tournament(geometry, players, games, threads, cacheBytes, System.nanoTime()).run().print(System.out);
+    }
+
+    public Results run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Results>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; ++t) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Results>() {
+                    @Override
+                    public Results call() {
+                        return play(thread);
+                    }
+                }));
+            }
+            Results total = new Results(geometry, players);
+            for (Future<Results> future : futures) {
+                try {
+                    total.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Tournament thread failed", e.getCause());
+                }
+            }
+            total.elapsedNanos = System.nanoTime() - start;
+            total.threads = threads;
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Plays games thread, thread + threads, ... of the schedule, which runs through every pair in turn.
+    private Results play(int thread) {
+        Random random = new Random(seed + thread);
+        Player[] players = new Player[this.players.size()];
+        for (int i = 0; i < players.length; ++i) {
+            players[i] = newPlayer(this.players.get(i), random);
+        }
+        Results results = new Results(geometry, this.players);
+        Board board = new Board(geometry, false);
+        int pairs = players.length * (players.length - 1) / 2;
+        for (long game = thread; game < pairs * gamesPerPair; game += threads) {
+            int pair = (int) (game / gamesPerPair);
+            int first = 0;
+            int second = 1;
+            for (int skip = pair; skip > 0; --skip) {
+                if (++second == players.length) {
+                    second = ++first + 1;
+                }
+            }
+            // Odd games swap sides, so each player starts half the games.
+            if ((game % gamesPerPair & 1) != 0) {
+                int swap = first;
+                first = second;
+                second = swap;
+            }
+            results.record(first, second, playGame(board, players[first], players[second],
+                    results.latencies[first], results.latencies[second]));
+        }
+        return results;
+    }
+
+    private int playGame(Board board, Player one, Player two, LatencyHistogram oneLatency,
+                         LatencyHistogram twoLatency) {
+        board.clear(false);
+        Position position = Position.empty(geometry, false);
+        while (board.state() == Board.CONTINUE) {
+            boolean playerTwo = board.playerTwoToMove();
+            long start = System.nanoTime();
+            int move = (playerTwo ? two : one).move(position);
+            (playerTwo ? twoLatency : oneLatency).record(System.nanoTime() - start);
+            board.play(move);
+            position = position.play(move);
+        }
+        return board.state();
+    }
+
+    private Player newPlayer(String spec, Random random) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        SearchLimits limits = colon < 0 ? SearchLimits.NONE : parseLimits(spec, spec.substring(colon + 1));
+        if (name.equals("random")) {
+            return new RandomPlayer(random);
+        } else if (name.equals("minimax")) {
+            return new EnginePlayer(new MinimaxEngine(geometry,
+                    TranspositionTable.withMemoryBudget(geometry, cacheBytes)), limits);
+        } else if (name.equals("mcts")) {
+            return new EnginePlayer(new MonteCarloEngine(geometry), limits);
+        }
+        throw new IllegalArgumentException("Unknown player " + spec);
+    }
+
+    private static SearchLimits parseLimits(String spec, String limit) {
+        try {
+            if (limit.startsWith("d")) {
+                return SearchLimits.depth(Integer.parseInt(limit.substring(1)));
+            } else if (limit.endsWith("ms")) {
+                return SearchLimits.time(Long.parseLong(limit.substring(0, limit.length() - 2)), TimeUnit.MILLISECONDS);
+            } else if (limit.endsWith("n")) {
+                return SearchLimits.nodes(Long.parseLong(limit.substring(0, limit.length() - 1)));
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Bad limit in player " + spec);
+    }
+
+    private interface Player {
+        int move(Position position);
+    }
+
+    private static final class RandomPlayer implements Player {
+        private final Random random;
+
+        RandomPlayer(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public int move(Position position) {
+            long empty = position.emptyCells();
+            for (int skip = random.nextInt(Long.bitCount(empty)); skip > 0; --skip) {
+                empty &= empty - 1;
+            }
+            return Long.numberOfTrailingZeros(empty);
+        }
+    }
+
+    private static final class EnginePlayer implements Player {
+        private final SearchEngine engine;
+        private final SearchLimits limits;
+
+        EnginePlayer(SearchEngine engine, SearchLimits limits) {
+            this.engine = engine;
+            this.limits = limits;
+        }
+
+        @Override
+        public int move(Position position) {
+            return engine.search(position, limits).getMove();
+        }
+    }
+
+    /**
+     * Game outcomes between every pair of players and each player's move latencies.
+     */
+    public static final class Results {
+        private final BoardGeometry geometry;
+        private final List<String> players;
+        // Indexed [player][opponent], from the player's side.
+        private final long[][] wins;
+        private final long[][] draws;
+        private final long[][] losses;
+        final LatencyHistogram[] latencies;
+        private long games;
+        private long elapsedNanos;
+        private int threads;
+
+        Results(BoardGeometry geometry, List<String> players) {
+            this.geometry = geometry;
+            this.players = players;
+            int count = players.size();
+            wins = new long[count][count];
+            draws = new long[count][count];
+            losses = new long[count][count];
+            latencies = new LatencyHistogram[count];
+            for (int i = 0; i < count; ++i) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(int playerOne, int playerTwo, int state) {
+            ++games;
+            if (state == Board.TIE) {
+                ++draws[playerOne][playerTwo];
+                ++draws[playerTwo][playerOne];
+            } else {
+                int winner = state == Board.ONE_WINS ? playerOne : playerTwo;
+                int loser = state == Board.ONE_WINS ? playerTwo : playerOne;
+                ++wins[winner][loser];
+                ++losses[loser][winner];
+            }
+        }
+
+        void add(Results other) {
+            for (int i = 0; i < players.size(); ++i) {
+                for (int j = 0; j < players.size(); ++j) {
+                    wins[i][j] += other.wins[i][j];
+                    draws[i][j] += other.draws[i][j];
+                    losses[i][j] += other.losses[i][j];
+                }
+                latencies[i].add(other.latencies[i]);
+            }
+            games += other.games;
+        }
+
+        public long games() {
+            return games;
+        }
+
+        public long wins(int player, int opponent) {
+            return wins[player][opponent];
+        }
+
+        public long draws(int player, int opponent) {
+            return draws[player][opponent];
+        }
+
+        public long losses(int player, int opponent) {
+            return losses[player][opponent];
+        }
+
+        public void print(PrintStream out) {
+            double seconds = elapsedNanos / 1e9;
+            out.printf("%s board, %d threads: %d games in %.1f s, %.0f games/s%n",
+                    geometry, threads, games, seconds, games / Math.max(seconds, 1e-9));
+
+            int count = players.size();
+            String[][] cells = new String[count][count];
+            int width = 12;
+            for (int i = 0; i < count; ++i) {
+                width = Math.max(width, players.get(i).length() + 2);
+                for (int j = 0; j < count; ++j) {
+                    cells[i][j] = i == j ? "-" : wins[i][j] + "/" + draws[i][j] + "/" + losses[i][j];
+                    width = Math.max(width, cells[i][j].length() + 2);
+                }
+            }
+            String column = "%-" + width + "s";
+            out.println();
+            out.printf(column, "W/D/L");
+            for (String player : players) {
+                out.printf(column, player);
+            }
+            out.println();
+            for (int i = 0; i < count; ++i) {
+                out.printf(column, players.get(i));
+                for (int j = 0; j < count; ++j) {
+                    out.printf(column, cells[i][j]);
+                }
+                out.println();
+            }
+
+            out.println();
+            out.printf(column + "%12s%10s%10s%10s%10s%n", "Move (us)", "moves", "p50", "p90", "p99", "max");
+            for (int i = 0; i < count; ++i) {
+                LatencyHistogram latency = latencies[i];
+                out.printf(column + "%12d%10.1f%10.1f%10.1f%10.1f%n", players.get(i), latency.count(),
+                        latency.percentile(0.5) / 1e3, latency.percentile(0.9) / 1e3,
+                        latency.percentile(0.99) / 1e3, latency.max() / 1e3);
+            }
+        }
+    }
+}
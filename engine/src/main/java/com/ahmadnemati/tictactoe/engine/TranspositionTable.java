@@ -0,0 +1,233 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results. Positions are keyed by their canonical form under the
+ * board symmetries, so a position and all of its rotations and reflections share one entry.
+ *
+ * <p>Slots come in buckets of two. The first keeps the deepest result, unless it was stored
+ * before the current search began, and the second always takes what the first turns away, so
+ * deep results survive long sessions while recent shallow ones still get cached.
+ *
+ * <p>Safe to share between search threads without locking: each slot stores its key XORed with
+ * its entry, so a slot torn by two concurrent writes fails the key check instead of returning a
+ * mismatched entry.
+ */
+public final class TranspositionTable {
+
+    static final int MISSING = 0;
+    static final int EXACT = 1;
+    static final int LOWER_BOUND = 2;
+    static final int UPPER_BOUND = 3;
+
+    private static final int NO_MOVE = 0xFF;
+    // Heap bytes per slot: key, entry, age and dirty bit.
+    private static final double BYTES_PER_SLOT = 8 + 4 + 1 + 1 / 8.0;
+    private static final int MAX_SIZE_BITS = 28;
+
+    private final BoardGeometry geometry;
+    private final int sizeBits;
+    private final int bucketMask;
+    private final long[] keys;
+    // Entries pack score << 16 | move << 8 | depth << 2 | bound, with the move in canonical orientation.
+    private final int[] entries;
+    // The search generation that last wrote each slot, modulo 256.
+    private final byte[] ages;
+    // One bit per slot written since the last flush to a TableFile. Concurrent writers can lose
+    // each other's bits, which only costs an entry in the file.
+    private final long[] dirty;
+
+    private volatile byte age;
+    // Plain counter, so concurrent searches may undercount.
+    private long evictions;
+
+    /**
+     * A table of {@code 1 << sizeBits} slots, at least two.
+     */
+    public TranspositionTable(BoardGeometry geometry, int sizeBits) {
+        if (sizeBits < 1 || sizeBits > MAX_SIZE_BITS) {
+            throw new IllegalArgumentException("Table size bits out of range: " + sizeBits);
+        }
+        this.geometry = geometry;
+        this.sizeBits = sizeBits;
+        this.bucketMask = (1 << (sizeBits - 1)) - 1;
+        this.keys = new long[1 << sizeBits];
+        this.entries = new int[1 << sizeBits];
+        this.ages = new byte[1 << sizeBits];
+        this.dirty = new long[Math.max(1, (1 << sizeBits) >>> 6)];
+    }
+
+    /**
+     * The largest table whose arrays fit in {@code bytes} of heap.
+     */
+    public static TranspositionTable withMemoryBudget(BoardGeometry geometry, long bytes) {
+        int sizeBits = 1;
+        while (sizeBits < MAX_SIZE_BITS && (2L << sizeBits) * BYTES_PER_SLOT <= bytes) {
+            ++sizeBits;
+        }
+        return new TranspositionTable(geometry, sizeBits);
+    }
+
+    /**
+     * Returns a key for the canonical form of the position, the one with the smallest Zobrist hash.
+     * The low three bits hold the symmetry that produced it so stored moves can be mapped back to
+     * this orientation. Searches take the same key from {@link Board#tableKey()} without
+     * rehashing the board.
+     */
+    long key(long playerOneMask, long playerTwoMask, boolean playerTwoToMove) {
+        long bestHash = Long.MAX_VALUE;
+        int bestSymmetry = 0;
+        for (int s = 0; s < geometry.symmetries; ++s) {
+            long hash = geometry.zobrist(playerOneMask, playerTwoMask, playerTwoToMove, s);
+            if (hash < bestHash) {
+                bestHash = hash;
+                bestSymmetry = s;
+            }
+        }
+        return (bestHash & ~7L) | bestSymmetry;
+    }
+
+    /**
+     * Starts a new search generation, after which everything stored so far may be replaced by
+     * shallower results.
+     */
+    void newSearch() {
+        age = (byte) (age + 1);
+    }
+
+    int get(long key) {
+        int slot = slot(key);
+        long storedKey = key & ~7L;
+        int entry = entries[slot];
+        if ((keys[slot] ^ entry) == storedKey) {
+            return entry;
+        }
+        entry = entries[slot + 1];
+        return (keys[slot + 1] ^ entry) == storedKey ? entry : MISSING;
+    }
+
+    void put(long key, int score, int bound, int depth, int move) {
+        int slot = slot(key);
+        int canonicalMove = move < 0 ? NO_MOVE : geometry.cellMapping[(int) (key & 7)][move];
+        int entry = score << 16 | canonicalMove << 8 | Math.max(0, Math.min(depth, 63)) << 2 | bound;
+        long storedKey = key & ~7L;
+        int preferred = entries[slot];
+        if (preferred != MISSING
+                && (keys[slot] ^ preferred) != storedKey
+                && ages[slot] == age
+                && depth(preferred) > depth(entry)) {
+            ++slot;
+        }
+        int previous = entries[slot];
+        if (previous != MISSING && (keys[slot] ^ previous) != storedKey) {
+            ++evictions;
+        }
+        keys[slot] = storedKey ^ entry;
+        entries[slot] = entry;
+        ages[slot] = age;
+        dirty[slot >>> 6] |= 1L << slot;
+    }
+
+    static int score(int entry) {
+        return entry >> 16;
+    }
+
+    static int bound(int entry) {
+        return entry & 3;
+    }
+
+    static int depth(int entry) {
+        return (entry >> 2) & 63;
+    }
+
+    int move(long key, int entry) {
+        int canonicalMove = (entry >> 8) & 0xFF;
+        return canonicalMove == NO_MOVE ? -1 : geometry.inverseMapping[(int) (key & 7)][canonicalMove];
+    }
+
+    BoardGeometry geometry() {
+        return geometry;
+    }
+
+    int sizeBits() {
+        return sizeBits;
+    }
+
+    /**
+     * Fills the empty slots from stored ones, which must hold {@link #capacity()} of each. Slots
+     * already written in memory are newer and stay.
+     */
+    void load(LongBuffer storedKeys, IntBuffer storedEntries) {
+        for (int slot = 0; slot < entries.length; ++slot) {
+            if (entries[slot] == MISSING) {
+                keys[slot] = storedKeys.get(slot);
+                entries[slot] = storedEntries.get(slot);
+            }
+        }
+    }
+
+    /**
+     * Writes the slots changed since the last call to the same positions of the given buffers and
+     * returns how many were written.
+     */
+    int flushDirty(LongBuffer storedKeys, IntBuffer storedEntries) {
+        int written = 0;
+        for (int word = 0; word < dirty.length; ++word) {
+            long bits = dirty[word];
+            if (bits == 0) {
+                continue;
+            }
+            // Cleared before copying, so a slot written meanwhile is either copied now or marked again.
+            dirty[word] = 0;
+            for (; bits != 0; bits &= bits - 1) {
+                int slot = word << 6 | Long.numberOfTrailingZeros(bits);
+                storedKeys.put(slot, keys[slot]);
+                storedEntries.put(slot, entries[slot]);
+                ++written;
+            }
+        }
+        return written;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Entries overwritten by an entry for a different position since the table was created or
+     * last cleared.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Counts the occupied slots. This scans the whole table, so it is meant for occasional reads
+     * such as statistics, not for the search.
+     */
+    public int size() {
+        int size = 0;
+        for (int entry : entries) {
+            if (entry != MISSING) {
+                ++size;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, MISSING);
+        Arrays.fill(ages, (byte) 0);
+        Arrays.fill(dirty, -1L);
+        evictions = 0;
+    }
+
+    // The first slot of the key's bucket.
+    private int slot(long key) {
+        return ((int) (key >>> 32) & bucketMask) << 1;
+    }
+}
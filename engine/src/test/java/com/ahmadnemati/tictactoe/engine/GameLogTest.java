@@ -0,0 +1,86 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GameLogTest {
+
+    private static List<int[]> readAll(File path, BoardGeometry geometry) throws Exception {
+        final List<int[]> games = new ArrayList<>();
+        GameLog.scan(path, geometry, new GameLog.Visitor() {
+            @Override
+            public void visit(boolean playerTwoStarted, int[] moves, int count) {
+                int[] game = Arrays.copyOf(moves, count + 1);
+                game[count] = playerTwoStarted ? 1 : 0;
+                games.add(game);
+            }
+        });
+        return games;
+    }
+
+    @Test
+    public void gamesReadBackInOrder() throws Exception {
+        File path = File.createTempFile("games", ".log");
+        path.delete();
+        GameLog log = GameLog.open(path, BoardGeometry.STANDARD);
+        log.append(false, new int[] {4, 0, 8, 2, 6, 1, 7}, 7);
+        log.append(true, new int[] {0, 4, 8, 2, 6, 3, 5, 7, 1}, 9);
+        log.close();
+        // Both games and the header in 12 + 5 + 6 bytes.
+        assertEquals(23, path.length());
+
+        List<int[]> games = readAll(path, BoardGeometry.STANDARD);
+        assertEquals(2, games.size());
+        assertArrayEquals(new int[] {4, 0, 8, 2, 6, 1, 7, 0}, games.get(0));
+        assertArrayEquals(new int[] {0, 4, 8, 2, 6, 3, 5, 7, 1, 1}, games.get(1));
+        path.delete();
+    }
+
+    @Test
+    public void reopeningDropsATornGame() throws Exception {
+        File path = File.createTempFile("games", ".log");
+        path.delete();
+        GameLog log = GameLog.open(path, BoardGeometry.STANDARD);
+        log.append(false, new int[] {0, 3, 1, 4, 2}, 5);
+        log.close();
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.seek(file.length());
+        // A nine-move game with only two of its five move bytes written.
+        file.write(new byte[] {9, 0x10, 0x32});
+        file.close();
+
+        log = GameLog.open(path, BoardGeometry.STANDARD);
+        log.append(true, new int[] {4, 0, 8}, 3);
+        log.close();
+        List<int[]> games = readAll(path, BoardGeometry.STANDARD);
+        assertEquals(2, games.size());
+        assertArrayEquals(new int[] {4, 0, 8, 1}, games.get(1));
+        path.delete();
+    }
+
+    @Test
+    public void summaryCountsOpeningsAndWinLines() throws Exception {
+        GameLogSummary summary = new GameLogSummary(BoardGeometry.STANDARD);
+        summary.visit(false, new int[] {0, 3, 1, 4, 2}, 5);
+        summary.visit(true, new int[] {0, 4, 8, 2, 6, 3, 5, 7, 1}, 9);
+        assertEquals(2, summary.games());
+        assertEquals(1, summary.playerOneWins());
+        assertEquals(0, summary.playerTwoWins());
+        assertEquals(2, summary.openings(0));
+        long wins = 0;
+        for (int line = 0; line < summary.lineCount(); ++line) {
+            wins += summary.winsOnLine(false, line);
+            if (summary.winsOnLine(false, line) > 0) {
+                assertEquals(7, summary.lineMask(line));
+            }
+        }
+        assertEquals(1, wins);
+    }
+}
@@ -0,0 +1,69 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class MinimaxEngineTest {
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.STANDARD;
+
+    private static Position position(String grid, boolean playerTwoToMove) {
+        long playerOne = 0;
+        long playerTwo = 0;
+        for (int i = 0; i < grid.length(); ++i) {
+            if (grid.charAt(i) == 'X') {
+                playerOne |= 1L << i;
+            } else if (grid.charAt(i) == 'O') {
+                playerTwo |= 1L << i;
+            }
+        }
+        return new Position(GEOMETRY, playerOne, playerTwo, playerTwoToMove);
+    }
+
+    @Test
+    public void emptyBoardIsADraw() throws Exception {
+        SearchEngine engine = new MinimaxEngine(GEOMETRY, new TranspositionTable(GEOMETRY, 12));
+        SearchResult result = engine.search(Position.empty(GEOMETRY, false), SearchLimits.NONE);
+        assertEquals(0, result.getScore());
+        assertEquals(9, result.getDepth());
+    }
+
+    @Test
+    public void takesTheWinInsteadOfBlocking() throws Exception {
+        SearchEngine engine = new MinimaxEngine(GEOMETRY, new TranspositionTable(GEOMETRY, 12));
+        SearchResult result = engine.search(position("XX-OO----", true), SearchLimits.NONE);
+        assertEquals(5, result.getMove());
+        assertTrue(result.getScore() > MinimaxEngine.MAX_EVALUATION);
+    }
+
+    @Test
+    public void blocksTheOnlyThreat() throws Exception {
+        SearchEngine engine = new MinimaxEngine(GEOMETRY, new TranspositionTable(GEOMETRY, 12));
+        SearchResult result = engine.search(position("XX--O----", true), SearchLimits.NONE);
+        assertEquals(2, result.getMove());
+    }
+
+    @Test
+    public void stoppedSearchReturnsNoMove() throws Exception {
+        SearchEngine engine = new MinimaxEngine(GEOMETRY, new TranspositionTable(GEOMETRY, 12));
+        SearchLimits limits = SearchLimits.NONE.stopWhen(new AtomicBoolean(true));
+        assertEquals(-1, engine.search(Position.empty(GEOMETRY, false), limits).getMove());
+    }
+
+    @Test
+    public void boardUndoRestoresState() throws Exception {
+        Board board = new Board(GEOMETRY, false);
+        for (int cell : new int[] {0, 3, 1, 4}) {
+            board.play(cell);
+        }
+        assertEquals(1L << 2, board.threats(false));
+        assertEquals(Board.ONE_WINS, board.play(2));
+        board.undo();
+        assertEquals(Board.CONTINUE, board.state());
+        assertFalse(board.playerTwoToMove());
+        assertEquals(position("XX-OO----", false), board.toPosition());
+    }
+}
@@ -0,0 +1,46 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MonteCarloEngineTest {
+
+    private static final BoardGeometry GEOMETRY = new BoardGeometry(4, 4, 3);
+
+    private static Position position(String grid, boolean playerTwoToMove) {
+        long playerOne = 0;
+        long playerTwo = 0;
+        for (int i = 0; i < grid.length(); ++i) {
+            if (grid.charAt(i) == 'X') {
+                playerOne |= 1L << i;
+            } else if (grid.charAt(i) == 'O') {
+                playerTwo |= 1L << i;
+            }
+        }
+        return new Position(GEOMETRY, playerOne, playerTwo, playerTwoToMove);
+    }
+
+    @Test
+    public void takesTheWinOnTheSpot() throws Exception {
+        SearchEngine engine = new MonteCarloEngine(GEOMETRY);
+        SearchResult result = engine.search(position("XX---OO---------", false), SearchLimits.nodes(1000));
+        assertEquals(2, result.getMove());
+        assertTrue(result.getScore() > MinimaxEngine.MAX_EVALUATION);
+    }
+
+    @Test
+    public void blocksTheOnlyThreat() throws Exception {
+        SearchEngine engine = new MonteCarloEngine(GEOMETRY);
+        SearchResult result = engine.search(position("XX---O----X-O---", true), SearchLimits.nodes(5000));
+        assertEquals(2, result.getMove());
+    }
+
+    @Test
+    public void countsIterationsAsNodes() throws Exception {
+        SearchEngine engine = new MonteCarloEngine(GEOMETRY);
+        SearchResult result = engine.search(Position.empty(GEOMETRY, false), SearchLimits.nodes(3000));
+        assertEquals(3000, result.getNodes());
+        assertTrue(result.getPrincipalVariation().length > 0);
+    }
+}
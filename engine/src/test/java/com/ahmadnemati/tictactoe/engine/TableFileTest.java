@@ -0,0 +1,33 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TableFileTest {
+
+    private static final BoardGeometry GEOMETRY = new BoardGeometry(4, 4, 4);
+
+    @Test
+    public void reopenedTableKeepsEntries() throws Exception {
+        File path = File.createTempFile("table", ".bin");
+        try {
+            TranspositionTable table = new TranspositionTable(GEOMETRY, 12);
+            TableFile file = TableFile.open(path, table);
+            new MinimaxEngine(GEOMETRY, table).search(Position.empty(GEOMETRY, false), SearchLimits.depth(4));
+            file.close();
+
+            TranspositionTable reloaded = new TranspositionTable(GEOMETRY, 12);
+            TableFile.open(path, reloaded).close();
+            assertEquals(table.size(), reloaded.size());
+
+            TranspositionTable resized = new TranspositionTable(GEOMETRY, 11);
+            TableFile.open(path, resized).close();
+            assertEquals(0, resized.size());
+        } finally {
+            path.delete();
+        }
+    }
+}
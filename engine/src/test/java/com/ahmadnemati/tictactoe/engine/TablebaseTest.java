@@ -0,0 +1,73 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TablebaseTest {
+
+    @Test
+    public void indexRanksEveryPositionOfALayer() {
+        BoardGeometry geometry = new BoardGeometry(3, 3, 3);
+        for (int n = 0; n <= geometry.cells; ++n) {
+            int opponents = n - n / 2;
+            long arrangements = Tablebase.BINOMIAL[n][opponents];
+            for (long index = 0; index < Tablebase.layerSize(geometry, n); ++index) {
+                long occupied = Tablebase.unrank(index / arrangements, n, geometry.cells);
+                long opponentMask = Tablebase.deposit(Tablebase.unrank(index % arrangements, opponents, n), occupied);
+                assertEquals(index, Tablebase.index(occupied ^ opponentMask, opponentMask));
+            }
+        }
+    }
+
+    @Test
+    public void standardBoardIsADraw() throws Exception {
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        Tablebase tablebase = generate(geometry, 1 << 20);
+
+        assertEquals(0, tablebase.search(Position.empty(geometry, false), SearchLimits.NONE).getScore());
+        // X on 0 and 1 with O on 4: O must block at 2.
+        SearchResult block = tablebase.search(new Position(geometry, 0b11, 0b10000, true), SearchLimits.NONE);
+        assertEquals(2, block.getMove());
+        // X on 0 and 4 with O on 1 and 2, X to move: 8 wins at once.
+        Position win = new Position(geometry, 0b10001, 0b110, false);
+        SearchResult result = tablebase.search(win, SearchLimits.NONE);
+        assertEquals(8, result.getMove());
+        assertEquals(new MinimaxEngine(geometry, new TranspositionTable(geometry, 12)).search(win, SearchLimits.NONE)
+                .getScore(), result.getScore());
+    }
+
+    @Test
+    public void spilledLayersMatchSearch() throws Exception {
+        BoardGeometry geometry = new BoardGeometry(4, 3, 3);
+        Tablebase tablebase = generate(geometry, 0);
+
+        SearchEngine minimax = new MinimaxEngine(geometry, new TranspositionTable(geometry, 16));
+        Position position = Position.empty(geometry, false);
+        while (!position.isOver()) {
+            SearchResult result = tablebase.search(position, SearchLimits.NONE);
+            assertEquals(Integer.signum(minimax.search(position, SearchLimits.NONE).getScore()),
+                    Integer.signum(result.getScore()));
+            position = position.play(result.getMove());
+        }
+    }
+
+    private static Tablebase generate(BoardGeometry geometry, long memoryBytes) throws Exception {
+        File path = File.createTempFile("tablebase", ".bin");
+        path.deleteOnExit();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            PrintStream log = new PrintStream(new ByteArrayOutputStream());
+            new TablebaseGenerator(geometry, pool, log).generate(path, memoryBytes);
+            TablebaseGenerator.verify(path, geometry, log);
+        } finally {
+            pool.shutdown();
+        }
+        return Tablebase.open(path, geometry);
+    }
+}
@@ -0,0 +1,27 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TournamentTest {
+
+    @Test
+    public void fullSearchNeverLosesToRandomPlay() throws Exception {
+        Tournament tournament = new Tournament(BoardGeometry.STANDARD, Arrays.asList("random", "minimax"),
+                200, 2, 1 << 16, 1);
+        Tournament.Results results = tournament.run();
+        assertEquals(200, results.games());
+        assertEquals(0, results.losses(1, 0));
+        assertEquals(results.wins(1, 0), results.losses(0, 1));
+        assertEquals(results.draws(0, 1), results.draws(1, 0));
+        assertEquals(200, results.wins(0, 1) + results.draws(0, 1) + results.losses(0, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPlayers() throws Exception {
+        new Tournament(BoardGeometry.STANDARD, Arrays.asList("random", "alphabeta"), 1, 1, 1 << 16, 1);
+    }
+}
@@ -0,0 +1,55 @@
+package com.ahmadnemati.tictactoe.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.STANDARD;
+
+    @Test
+    public void memoryBudgetBoundsCapacity() throws Exception {
+        assertEquals(1 << 16, TranspositionTable.withMemoryBudget(GEOMETRY, 1 << 20).capacity());
+        assertEquals(2, TranspositionTable.withMemoryBudget(GEOMETRY, 0).capacity());
+    }
+
+    @Test
+    public void deepEntrySurvivesShallowCollisionsInTheSameSearch() throws Exception {
+        // With one bucket every position collides.
+        TranspositionTable table = new TranspositionTable(GEOMETRY, 1);
+        long deep = table.key(1, 0, true);
+        long shallow = table.key(2, 0, true);
+        long other = table.key(0, 16, false);
+        table.put(deep, 5, TranspositionTable.EXACT, 9, 4);
+        table.put(shallow, 1, TranspositionTable.EXACT, 1, 4);
+        table.put(other, 2, TranspositionTable.EXACT, 1, 4);
+        assertEquals(9, TranspositionTable.depth(table.get(deep)));
+        assertEquals(TranspositionTable.MISSING, table.get(shallow));
+        assertEquals(1, table.evictions());
+
+        table.newSearch();
+        table.put(shallow, 1, TranspositionTable.EXACT, 1, 4);
+        assertEquals(TranspositionTable.MISSING, table.get(deep));
+    }
+
+    @Test
+    public void incrementalKeysMatchKeysFromScratch() throws Exception {
+        BoardGeometry geometry = new BoardGeometry(4, 4, 3);
+        TranspositionTable table = new TranspositionTable(geometry, 4);
+        Board board = new Board(geometry, true);
+        for (int cell : new int[] {5, 0, 10, 15, 3}) {
+            board.play(cell);
+            assertEquals(table.key(board.playerOneMask(), board.playerTwoMask(), board.playerTwoToMove()),
+                    board.tableKey());
+        }
+        board.place(12, false);
+        board.setPlayerTwoToMove(false);
+        board.undo();
+        board.undo();
+        assertEquals(table.key(board.playerOneMask(), board.playerTwoMask(), board.playerTwoToMove()),
+                board.tableKey());
+        // A reflected position shares its key, up to the symmetry in the low bits.
+        assertEquals(table.key(1, 2, false) & ~7L, table.key(8, 4, false) & ~7L);
+    }
+}